@@ -0,0 +1,30 @@
+package com.vaadin.graph;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Optional extension of {@link GraphRepository} for remote repositories which
+ * can answer several requests at the same time. When a node is expanded,
+ * {@link GraphExplorer} asks for all labels and directions at once and waits
+ * only as long as the slowest of them (or until a deadline), instead of for
+ * the sum of all of them.
+ * <p>
+ * {@link AsyncGraphRepositoryAdapter} runs the blocking methods of a plain
+ * repository on an executor.
+ */
+public interface AsyncGraphRepository<N extends Node, A extends Arc> extends GraphRepository<N, A> {
+
+	/**
+	 * Fetches the arcs connected to the given node, with the given label, in
+	 * the given direction, together with their opposite nodes. Must not block.
+	 * 
+	 * @param node graph node
+	 * @param label arc label
+	 * @param dir INCOMING for arcs pointing towards the given node, OUTGOING
+	 *        for arcs pointing away from the given node
+	 * @return future completing with the arcs, possibly on another thread
+	 */
+	public CompletableFuture<List<Incidence<N, A>>> getIncidencesAsync(N node, String label, Arc.Direction dir);
+
+}
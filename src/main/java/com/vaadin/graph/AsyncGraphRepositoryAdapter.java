@@ -0,0 +1,97 @@
+package com.vaadin.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Adapts a plain {@link GraphRepository} to {@link AsyncGraphRepository} by
+ * running its blocking requests on an executor. The executor needs a thread
+ * per concurrent request to gain anything, e.g. a cached thread pool; share it
+ * between sessions to bound the load on the backend.
+ */
+public class AsyncGraphRepositoryAdapter<N extends Node, A extends Arc> implements AsyncGraphRepository<N, A> {
+
+	private final GraphRepository<N, A> repository;
+	private final Executor executor;
+
+	/**
+	 * @param repository repository answering the requests
+	 * @param executor executor running the requests
+	 */
+	public AsyncGraphRepositoryAdapter(GraphRepository<N, A> repository, Executor executor) {
+		this.repository = repository;
+		this.executor = executor;
+	}
+
+	/**
+	 * @param repository a graph repository
+	 * @param executor executor running the requests of a blocking repository
+	 * @return the repository itself if it is asynchronous, an adapter otherwise
+	 */
+	public static <N extends Node, A extends Arc> AsyncGraphRepository<N, A> of(GraphRepository<N, A> repository,
+			Executor executor) {
+		if (repository instanceof AsyncGraphRepository) {
+			return (AsyncGraphRepository<N, A>) repository;
+		}
+		return new AsyncGraphRepositoryAdapter<N, A>(repository, executor);
+	}
+
+	public GraphRepository<N, A> getRepository() {
+		return repository;
+	}
+
+	@Override
+	public CompletableFuture<List<Incidence<N, A>>> getIncidencesAsync(final N node, final String label,
+			final Arc.Direction dir) {
+		return CompletableFuture.supplyAsync(() -> {
+			List<Incidence<N, A>> incidences = new ArrayList<Incidence<N, A>>();
+			for (A arc : repository.getArcs(node, label, dir)) {
+				N opposite = repository.getOpposite(node, arc);
+				if (dir == Arc.Direction.OUTGOING) {
+					incidences.add(new Incidence<N, A>(arc, label, dir, opposite, node, opposite));
+				} else {
+					incidences.add(new Incidence<N, A>(arc, label, dir, opposite, opposite, node));
+				}
+			}
+			return incidences;
+		}, executor);
+	}
+
+	@Override
+	public N getTail(A arc) {
+		return repository.getTail(arc);
+	}
+
+	@Override
+	public N getHead(A arc) {
+		return repository.getHead(arc);
+	}
+
+	@Override
+	public Iterable<String> getArcLabels() {
+		return repository.getArcLabels();
+	}
+
+	@Override
+	public Collection<A> getArcs(N node, String label, Arc.Direction dir) {
+		return repository.getArcs(node, label, dir);
+	}
+
+	@Override
+	public N getHomeNode() {
+		return repository.getHomeNode();
+	}
+
+	@Override
+	public N getOpposite(N node, A arc) {
+		return repository.getOpposite(node, arc);
+	}
+
+	@Override
+	public N getNodeById(String id) {
+		return repository.getNodeById(id);
+	}
+}
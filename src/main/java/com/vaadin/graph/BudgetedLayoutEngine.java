@@ -0,0 +1,25 @@
+package com.vaadin.graph;
+
+/**
+ * A layout engine whose calculation can be limited by a {@link LayoutBudget},
+ * e.g. to guarantee a response time regardless of the graph size.
+ */
+public interface BudgetedLayoutEngine extends LayoutEngine {
+
+	public LayoutBudget getBudget();
+
+	/**
+	 * Set limits for subsequent layout calculations.
+	 * 
+	 * @param budget layout limits, {@link LayoutBudget#UNLIMITED} to run until done
+	 */
+	public void setBudget(LayoutBudget budget);
+
+	/**
+	 * Answer statistics of the last layout calculation.
+	 * 
+	 * @return statistics or null if no layout has been calculated yet
+	 */
+	public LayoutStats getLastStats();
+
+}
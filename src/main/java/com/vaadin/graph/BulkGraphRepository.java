@@ -0,0 +1,39 @@
+package com.vaadin.graph;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Optional extension of {@link GraphRepository} answering the whole
+ * neighborhood of a node in one request instead of one request per label and
+ * direction (plus one per arc to resolve its ends). {@link GraphController}
+ * uses it when the repository implements it, and
+ * {@link BulkGraphRepositoryAdapter} otherwise.
+ */
+public interface BulkGraphRepository<N extends Node, A extends Arc> extends GraphRepository<N, A> {
+
+	/**
+	 * Gets all arcs connected to the given node, with their opposite nodes, tails and heads.
+	 * 
+	 * @param node graph node
+	 * @return arcs of the node grouped by direction and label
+	 */
+	public Neighborhood<N, A> getNeighborhood(N node);
+
+	/**
+	 * Gets the neighborhoods of several nodes. Implementations backed by a
+	 * remote store should answer this with a single request.
+	 * 
+	 * @param nodes graph nodes
+	 * @return neighborhoods by node ID
+	 */
+	public default Map<String, Neighborhood<N, A>> getNeighborhoods(Collection<N> nodes) {
+		Map<String, Neighborhood<N, A>> neighborhoods = new LinkedHashMap<String, Neighborhood<N, A>>();
+		for (N node : nodes) {
+			neighborhoods.put(node.getId(), getNeighborhood(node));
+		}
+		return neighborhoods;
+	}
+
+}
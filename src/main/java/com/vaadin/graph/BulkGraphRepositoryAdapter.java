@@ -0,0 +1,82 @@
+package com.vaadin.graph;
+
+import java.util.Collection;
+
+/**
+ * Adapts a plain {@link GraphRepository} to {@link BulkGraphRepository} by
+ * asking it for the arcs of every label and direction, and for the opposite
+ * node of every arc.
+ */
+public class BulkGraphRepositoryAdapter<N extends Node, A extends Arc> implements BulkGraphRepository<N, A> {
+
+	private final GraphRepository<N, A> repository;
+
+	public BulkGraphRepositoryAdapter(GraphRepository<N, A> repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * @param repository a graph repository
+	 * @return the repository itself if it supports bulk requests, an adapter otherwise
+	 */
+	public static <N extends Node, A extends Arc> BulkGraphRepository<N, A> of(GraphRepository<N, A> repository) {
+		if (repository instanceof BulkGraphRepository) {
+			return (BulkGraphRepository<N, A>) repository;
+		}
+		return new BulkGraphRepositoryAdapter<N, A>(repository);
+	}
+
+	@Override
+	public Neighborhood<N, A> getNeighborhood(N node) {
+		Neighborhood<N, A> neighborhood = new Neighborhood<N, A>(node);
+		for (Arc.Direction dir : Arc.Direction.values()) {
+			for (String label : repository.getArcLabels()) {
+				for (A arc : repository.getArcs(node, label, dir)) {
+					N opposite = repository.getOpposite(node, arc);
+					// the direction tells which end is which, no need to ask for tail and head
+					if (dir == Arc.Direction.OUTGOING) {
+						neighborhood.add(new Incidence<N, A>(arc, label, dir, opposite, node, opposite));
+					} else {
+						neighborhood.add(new Incidence<N, A>(arc, label, dir, opposite, opposite, node));
+					}
+				}
+			}
+		}
+		return neighborhood;
+	}
+
+	@Override
+	public N getTail(A arc) {
+		return repository.getTail(arc);
+	}
+
+	@Override
+	public N getHead(A arc) {
+		return repository.getHead(arc);
+	}
+
+	@Override
+	public Iterable<String> getArcLabels() {
+		return repository.getArcLabels();
+	}
+
+	@Override
+	public Collection<A> getArcs(N node, String label, Arc.Direction dir) {
+		return repository.getArcs(node, label, dir);
+	}
+
+	@Override
+	public N getHomeNode() {
+		return repository.getHomeNode();
+	}
+
+	@Override
+	public N getOpposite(N node, A arc) {
+		return repository.getOpposite(node, arc);
+	}
+
+	@Override
+	public N getNodeById(String id) {
+		return repository.getNodeById(id);
+	}
+}
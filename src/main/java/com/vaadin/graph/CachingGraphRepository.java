@@ -0,0 +1,286 @@
+package com.vaadin.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Graph repository decorator caching the answers of another repository.
+ * Arc counts are cached too; if the backing repository cannot count, they are
+ * counted from its (cached) arcs, but {@link #canCount()} tells the
+ * {@link GraphController} to fetch whole neighborhoods instead.
+ * <p>
+ * The cache is bounded by weight (an arc collection or neighborhood weighs its
+ * size, anything else 1) with least recently used eviction, and optionally by
+ * time. Concurrent identical requests are coalesced: only one of them asks the
+ * backing repository, the others wait for its answer. Null answers are cached
+ * too.
+ * <p>
+ * Share a single instance between sessions to share the cache. The cached
+ * nodes and arcs are handed out to all of them, so they must not be modified.
+ * The home node is not cached.
+ */
+public class CachingGraphRepository<N extends Node, A extends Arc> implements BulkGraphRepository<N, A>, CountingGraphRepository<N, A> {
+
+	private static enum Kind {
+		TAIL, HEAD, ARC_LABELS, ARCS, OPPOSITE, NODE, NEIGHBORHOOD, COUNT, COUNTS;
+	}
+
+	private final GraphRepository<N, A> repository;
+	private final Cache<Request, Optional<Object>> cache;
+
+	/**
+	 * Caches up to 10000 elements without time limit.
+	 *
+	 * @param repository repository to cache
+	 */
+	public CachingGraphRepository(GraphRepository<N, A> repository) {
+		this(repository, 10000, 0);
+	}
+
+	/**
+	 * @param repository repository to cache
+	 * @param maximumWeight maximal number of cached elements (nodes, arcs, labels)
+	 * @param expireAfterWriteMillis time after which an answer is asked again in
+	 *        milliseconds, 0 to keep answers until evicted by weight
+	 */
+	public CachingGraphRepository(GraphRepository<N, A> repository, long maximumWeight, long expireAfterWriteMillis) {
+		this.repository = repository;
+		CacheBuilder<Request, Optional<Object>> builder = CacheBuilder.newBuilder()
+				.maximumWeight(maximumWeight).weigher(new Weigher<Request, Optional<Object>>() {
+					@Override
+					public int weigh(Request key, Optional<Object> value) {
+						Object answer = value.orElse(null);
+						if (answer instanceof Neighborhood) {
+							return Math.max(1, ((Neighborhood<?, ?>) answer).size());
+						}
+						return answer instanceof Collection ? Math.max(1, ((Collection<?>) answer).size()) : 1;
+					}
+				}).recordStats();
+		if (expireAfterWriteMillis > 0) {
+			builder.expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS);
+		}
+		this.cache = builder.build();
+	}
+
+	public GraphRepository<N, A> getRepository() {
+		return repository;
+	}
+
+	@Override
+	public N getTail(final A arc) {
+		return get(new Request(Kind.TAIL, arc.getId(), null, null), new Callable<N>() {
+			@Override
+			public N call() {
+				return repository.getTail(arc);
+			}
+		});
+	}
+
+	@Override
+	public N getHead(final A arc) {
+		return get(new Request(Kind.HEAD, arc.getId(), null, null), new Callable<N>() {
+			@Override
+			public N call() {
+				return repository.getHead(arc);
+			}
+		});
+	}
+
+	@Override
+	public Iterable<String> getArcLabels() {
+		return get(new Request(Kind.ARC_LABELS, null, null, null), new Callable<Iterable<String>>() {
+			@Override
+			public Iterable<String> call() {
+				return copy(repository.getArcLabels());
+			}
+		});
+	}
+
+	@Override
+	public Collection<A> getArcs(final N node, final String label, final Arc.Direction dir) {
+		return get(new Request(Kind.ARCS, node.getId(), label, dir), new Callable<Collection<A>>() {
+			@Override
+			public Collection<A> call() {
+				return copy(repository.getArcs(node, label, dir));
+			}
+		});
+	}
+
+	@Override
+	public N getHomeNode() {
+		return repository.getHomeNode();
+	}
+
+	@Override
+	public N getOpposite(final N node, final A arc) {
+		return get(new Request(Kind.OPPOSITE, node.getId(), arc.getId(), null), new Callable<N>() {
+			@Override
+			public N call() {
+				return repository.getOpposite(node, arc);
+			}
+		});
+	}
+
+	/**
+	 * Caches whole neighborhoods, taken from the repository in a single request
+	 * if it is a {@link BulkGraphRepository}.
+	 */
+	@Override
+	public Neighborhood<N, A> getNeighborhood(final N node) {
+		return get(new Request(Kind.NEIGHBORHOOD, node.getId(), null, null), new Callable<Neighborhood<N, A>>() {
+			@Override
+			public Neighborhood<N, A> call() {
+				return BulkGraphRepositoryAdapter.of(repository).getNeighborhood(node);
+			}
+		});
+	}
+
+	/**
+	 * Caches arc counts, taken from the repository if it is a
+	 * {@link CountingGraphRepository}, else counted from the cached arcs.
+	 */
+	@Override
+	public int countArcs(final N node, final String label, final Arc.Direction dir) {
+		return get(new Request(Kind.COUNT, node.getId(), label, dir), new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				if (repository instanceof CountingGraphRepository) {
+					return ((CountingGraphRepository<N, A>) repository).countArcs(node, label, dir);
+				}
+				Collection<A> arcs = getArcs(node, label, dir);
+				return arcs == null ? 0 : arcs.size();
+			}
+		});
+	}
+
+	@Override
+	public Map<String, Integer> countArcs(final N node, final Arc.Direction dir) {
+		if (!(repository instanceof CountingGraphRepository)) {
+			return CountingGraphRepository.super.countArcs(node, dir);
+		}
+		return get(new Request(Kind.COUNTS, node.getId(), null, dir), new Callable<Map<String, Integer>>() {
+			@Override
+			public Map<String, Integer> call() {
+				return Collections.unmodifiableMap(((CountingGraphRepository<N, A>) repository).countArcs(node, dir));
+			}
+		});
+	}
+
+	@Override
+	public boolean canCount() {
+		return repository instanceof CountingGraphRepository && ((CountingGraphRepository<N, A>) repository).canCount();
+	}
+
+	@Override
+	public N getNodeById(final String id) {
+		return get(new Request(Kind.NODE, id, null, null), new Callable<N>() {
+			@Override
+			public N call() {
+				return repository.getNodeById(id);
+			}
+		});
+	}
+
+	/**
+	 * @return hit, miss, load and eviction counts since the cache has been created
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	/**
+	 * @return share of the requests answered from the cache
+	 */
+	public double getHitRate() {
+		return cache.stats().hitRate();
+	}
+
+	/**
+	 * Drops all cached answers, e.g. after the backing graph has changed.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(Request request, final Callable<T> loader) {
+		try {
+			return (T) cache.get(request, new Callable<Optional<Object>>() {
+				@Override
+				public Optional<Object> call() throws Exception {
+					return Optional.ofNullable((Object) loader.call());
+				}
+			}).orElse(null);
+		} catch (UncheckedExecutionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		} catch (ExecutionError e) {
+			throw e.getCause() instanceof Error ? (Error) e.getCause() : e;
+		} catch (ExecutionException e) {
+			// the repository methods don't throw checked exceptions
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static <T> List<T> copy(Iterable<T> elements) {
+		if (elements == null) {
+			return null;
+		}
+		List<T> list = new ArrayList<T>();
+		for (T element : elements) {
+			list.add(element);
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Cache key: the repository method and the IDs of its arguments.
+	 */
+	private static final class Request {
+		private final Kind kind;
+		private final String first;
+		private final String second;
+		private final Arc.Direction dir;
+
+		Request(Kind kind, String first, String second, Arc.Direction dir) {
+			this.kind = kind;
+			this.first = first;
+			this.second = second;
+			this.dir = dir;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = kind.hashCode();
+			hash = 31 * hash + (first == null ? 0 : first.hashCode());
+			hash = 31 * hash + (second == null ? 0 : second.hashCode());
+			return 31 * hash + (dir == null ? 0 : dir.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Request)) {
+				return false;
+			}
+			Request other = (Request) obj;
+			return kind == other.kind && dir == other.dir && equal(first, other.first) && equal(second, other.second);
+		}
+
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
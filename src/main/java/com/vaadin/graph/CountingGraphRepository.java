@@ -0,0 +1,55 @@
+package com.vaadin.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Optional extension of {@link GraphRepository} counting arcs without
+ * fetching them. {@link GraphController} uses the counts to create group
+ * nodes for large neighborhoods without fetching their members, which are
+ * only fetched when the user opens the group. Parallel arcs to the same node
+ * count separately, a group shows the number of distinct nodes once its
+ * members have been fetched.
+ */
+public interface CountingGraphRepository<N extends Node, A extends Arc> extends GraphRepository<N, A> {
+
+	/**
+	 * Counts the arcs connected to the given node, with the given label, in the given direction.
+	 * 
+	 * @param node graph node
+	 * @param label arc label
+	 * @param dir INCOMING for arcs pointing towards the given node, OUTGOING
+	 *        for arcs pointing away from the given node
+	 * @return number of arcs {@link #getArcs(Node, String, Arc.Direction)} would return
+	 */
+	public int countArcs(N node, String label, Arc.Direction dir);
+
+	/**
+	 * Counts the arcs connected to the given node in the given direction, per
+	 * label. Implementations should answer this with a single request.
+	 * 
+	 * @param node graph node
+	 * @param dir arc direction
+	 * @return number of arcs by label, labels without arcs may be left out
+	 */
+	public default Map<String, Integer> countArcs(N node, Arc.Direction dir) {
+		Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		for (String label : getArcLabels()) {
+			int count = countArcs(node, label, dir);
+			if (count > 0) {
+				counts.put(label, count);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * @return false if arcs can't be counted without fetching them, e.g. by a
+	 *         cache of a repository which can't count; whole neighborhoods are
+	 *         fetched instead then
+	 */
+	public default boolean canCount() {
+		return true;
+	}
+
+}
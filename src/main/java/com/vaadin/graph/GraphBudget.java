@@ -0,0 +1,99 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+
+import com.vaadin.graph.shared.ArcProxy;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Limits for the graph displayed by a {@link GraphExplorer}. When a limit is
+ * exceeded the explorer removes the nodes the user has not touched for the
+ * longest time, see {@link GraphExplorer#setGraphBudget(GraphBudget)}.
+ * A limit of zero means no limit.
+ */
+public final class GraphBudget implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Never remove nodes */
+	public static final GraphBudget UNLIMITED = new GraphBudget(0, 0, 0);
+
+	// rough sizes of a proxy with its strings and the model entries pointing to it
+	private static final int NODE_OVERHEAD = 200;
+	private static final int ARC_OVERHEAD = 160;
+
+	private final int maxNodes;
+	private final int maxArcs;
+	private final long maxBytes;
+
+	/**
+	 * @param maxNodes maximal number of displayed nodes
+	 * @param maxArcs maximal number of displayed arcs
+	 * @param maxBytes maximal estimated heap size of the displayed graph in bytes
+	 */
+	public GraphBudget(int maxNodes, int maxArcs, long maxBytes) {
+		this.maxNodes = maxNodes;
+		this.maxArcs = maxArcs;
+		this.maxBytes = maxBytes;
+	}
+
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	public int getMaxArcs() {
+		return maxArcs;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public boolean isUnlimited() {
+		return maxNodes <= 0 && maxArcs <= 0 && maxBytes <= 0;
+	}
+
+	/**
+	 * @return true if a graph of the given size does not fit into the budget
+	 */
+	public boolean isExceeded(int nodes, int arcs, long bytes) {
+		return maxNodes > 0 && nodes > maxNodes || maxArcs > 0 && arcs > maxArcs || maxBytes > 0 && bytes > maxBytes;
+	}
+
+	/**
+	 * @return estimated heap size of a node in the model, in bytes
+	 */
+	public static long estimateBytes(NodeProxy node) {
+		return NODE_OVERHEAD + 2L * (length(node.getId()) + length(node.getContent()) + length(node.getIconUrl())
+				+ length(node.getStyle()));
+	}
+
+	/**
+	 * @return estimated heap size of an arc in the model, in bytes
+	 */
+	public static long estimateBytes(ArcProxy arc) {
+		return ARC_OVERHEAD + 2L * (length(arc.getId()) + length(arc.getLabel()) + length(arc.getStyle()));
+	}
+
+	/**
+	 * @return estimated heap size of the nodes and arcs of a model, in bytes
+	 */
+	public static long estimateBytes(LayoutEngineModel model) {
+		long bytes = 0;
+		for (NodeProxy node : model.getNodes()) {
+			bytes += estimateBytes(node);
+		}
+		for (ArcProxy arc : model.getArcs()) {
+			bytes += estimateBytes(arc);
+		}
+		return bytes;
+	}
+
+	private static int length(String s) {
+		return s == null ? 0 : s.length();
+	}
+
+	@Override
+	public String toString() {
+		return "GraphBudget[nodes=" + maxNodes + ", arcs=" + maxArcs + ", bytes=" + maxBytes + "]";
+	}
+}
@@ -15,16 +15,33 @@
  */
 package com.vaadin.graph;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.StringTokenizer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import com.vaadin.data.ValueProvider;
-import com.vaadin.data.provider.ListDataProvider;
+import com.vaadin.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.data.provider.ConfigurableFilterDataProvider;
+import com.vaadin.data.provider.DataProvider;
+import com.vaadin.data.provider.Query;
 import com.vaadin.graph.shared.ArcProxy;
 import com.vaadin.graph.shared.NodeProxy;
 import com.vaadin.graph.shared.NodeProxy.NodeKind;
@@ -35,6 +52,7 @@ import com.vaadin.ui.Grid;
 import com.vaadin.ui.Grid.Column;
 import com.vaadin.ui.Grid.SelectionMode;
 import com.vaadin.ui.TextField;
+import com.vaadin.ui.UIDetachedException;
 import com.vaadin.ui.components.grid.HeaderRow;
 
 /**
@@ -44,7 +62,8 @@ import com.vaadin.ui.components.grid.HeaderRow;
  */
 public class GraphController<N extends Node, A extends Arc> {
 
-    private final Map<String, Map<String, A>> groups = new HashMap<String, Map<String, A>>();
+    private final Map<String, Group> groups = new HashMap<String, Group>();
+    private RenderCache renderCache;
 
 	protected ArcProxy createGroupRel(String arcId, String arcType, String fromId, String toId) {
         ArcProxy arc = new ArcProxy(arcId, fromId, toId);
@@ -55,20 +74,41 @@ public class GraphController<N extends Node, A extends Arc> {
 
 	protected ArcProxy createArc(A arc, N tail, N head) {
         ArcProxy p = new ArcProxy(arc.getId(), tail.getId(), head.getId());
-        p.setLabel(getArcLabel(arc));
-        p.setStyle(getArcStyle(arc));
+        RenderCache.Rendering rendering = render(arc, () -> new RenderCache.Rendering(getArcLabel(arc), null, getArcStyle(arc)));
+        p.setLabel(rendering.getContent());
+        p.setStyle(rendering.getStyle());
         return p;
     }
 
+    public RenderCache getRenderCache() {
+        return renderCache;
+    }
+
+    /**
+     * Sets the cache of rendered node content and arc labels, by default
+     * everything is rendered every time. Use the {@link RenderCache#getShared()
+     * shared} cache only if the rendering methods of this controller depend on
+     * nothing but the element, a cache per session rarely pays off.
+     *
+     * @param renderCache cache of renderings, or null to render every time
+     */
+    public void setRenderCache(RenderCache renderCache) {
+        this.renderCache = renderCache;
+    }
+
+    private RenderCache.Rendering render(GraphElement element, Supplier<RenderCache.Rendering> render) {
+        return renderCache == null ? render.get() : renderCache.get(getClass(), element, render);
+    }
+
     /**
      * @param node a graph node to get conent for
      * @return content (html snippet) to be displayed in the node 
      */
     protected String getNodeContent(Node node) {
-        StringBuilder builder = new StringBuilder("<b>" + node.getLabel() + "</b>");
+        StringBuilder builder = new StringBuilder("<b>").append(node.getLabel()).append("</b>");
         for (Map.Entry<String, Object> property : node.getProperties().entrySet()) {
         	if (!GraphElement.PROPERTY_NAME_STYLE.equals(property.getKey())) {
-        		builder.append("<br/>").append("<i>").append(property.getKey()).append(":</i> ").append(property.getValue());
+        		builder.append("<br/><i>").append(property.getKey()).append(":</i> ").append(property.getValue());
         	}
         }
         return builder.toString();
@@ -119,7 +159,7 @@ public class GraphController<N extends Node, A extends Arc> {
      * @return label (text) to represent node in node selector
      */
     protected String getNodeLabel(Node node) {
-        StringBuilder builder = new StringBuilder(node.getLabel() + "; ");
+        StringBuilder builder = new StringBuilder(node.getLabel()).append("; ");
         for (Map.Entry<String, Object> property : node.getProperties().entrySet()) {
         	if (!GraphElement.PROPERTY_NAME_STYLE.equals(property.getKey())) {
         		builder.append(property.getKey()).append(": ").append(property.getValue()).append(", ");
@@ -133,10 +173,10 @@ public class GraphController<N extends Node, A extends Arc> {
      * @return label (html snippet) to be displayed in the arc
      */
     protected String getArcLabel(Arc arc) {
-        StringBuilder builder = new StringBuilder("<b>" + arc.getLabel() + "</b>");
+        StringBuilder builder = new StringBuilder("<b>").append(arc.getLabel()).append("</b>");
         for (Map.Entry<?, ?> property : arc.getProperties().entrySet()) {
         	if (!GraphElement.PROPERTY_NAME_STYLE.equals(property.getKey())) {
-        		builder.append("<br/>").append("<i>").append(property.getKey()).append(":</i> ").append(property.getValue());
+        		builder.append("<br/><i>").append(property.getKey()).append(":</i> ").append(property.getValue());
         	}
         }
         return builder.toString();
@@ -158,19 +198,26 @@ public class GraphController<N extends Node, A extends Arc> {
         return "<b>" + arcType.toLowerCase().replace('_', ' ') + "</b>";
     }
 
+    /**
+     * Creates the selector listing the members of a group node. If the repository is a
+     * {@link PagedGraphRepository}, members are fetched page by page as the user scrolls
+     * and the filter is passed to the repository. Otherwise all members are fetched once
+     * and filtered with a {@link SearchIndex}. Members loaded before stay in a paged list.
+     */
     public NodeSelector getMemberSelector(final String groupId, final GraphRepository<N, A> repository) {
+        final Group group = groups.get(groupId);
 
         @SuppressWarnings("serial")
         class SelectorUI extends CustomComponent implements NodeSelector {
 
-            protected final Grid<N> matchList;
-            protected final ListDataProvider<N> members;
+            protected final Grid<Incidence<N, A>> matchList;
+            protected final ConfigurableFilterDataProvider<Incidence<N, A>, Void, String> members;
 
             public SelectorUI() {
             	matchList = new Grid<>();
                 matchList.setSizeFull();
                 matchList.setSelectionMode(SelectionMode.MULTI);
-                Column<N, String> column = matchList.addColumn((node) -> getNodeLabel(node)).setCaption("");
+                Column<Incidence<N, A>, String> column = matchList.addColumn((incidence) -> getNodeLabel(incidence.getOpposite())).setCaption("");
                
                 TextField stringMatcher = new TextField();
                 stringMatcher.setWidth(100, Unit.PERCENTAGE);
@@ -178,29 +225,28 @@ public class GraphController<N extends Node, A extends Arc> {
                 HeaderRow header = matchList.getHeaderRow(0);
                 header.getCell(column).setComponent(stringMatcher);
 
-                StringTokenizer tokenizer = new StringTokenizer(groupId);
-                String parentId = tokenizer.nextToken();
-                final N parent = repository.getNodeById(parentId);
-                members = new ListDataProvider<N>(
-                		groups.get(groupId).values().stream().map((arc) -> repository.getOpposite(parent, arc)).collect(Collectors.toList()));
+                if (repository instanceof PagedGraphRepository) {
+                    members = new MemberDataProvider(group, (PagedGraphRepository<N, A>) repository).withConfigurableFilter();
+                } else {
+                    // fetches the members now, so the group node can show their number
+                    group.getSearchIndex(repository);
+                    members = DataProvider.fromFilteringCallbacks(
+                            (Query<Incidence<N, A>, String> query) -> group.search(repository, query.getFilter().orElse(null))
+                                    .stream().skip(query.getOffset()).limit(query.getLimit()),
+                            (Query<Incidence<N, A>, String> query) -> group.search(repository, query.getFilter().orElse(null)).size())
+                            .withConfigurableFilter();
+                }
                 matchList.setDataProvider(members);
+                // remember the selected members, so they can be loaded without fetching the others
+                matchList.addSelectionListener(event -> group.pick(event.getAllSelectedItems()));
 
-                stringMatcher.addValueChangeListener(event -> {
-                	members.setFilter(ValueProvider.identity(), node -> {
-                        if (node == null) {
-                            return false;
-                        }
-                        String nodeLabel = getNodeLabel(node).toLowerCase().replaceAll("\\s", "");
-                        String filter = event.getValue().toLowerCase().replaceAll("\\s", "");
-                        return nodeLabel.contains(filter);
-                    });
-                });
+                stringMatcher.addValueChangeListener(event -> members.setFilter(event.getValue()));
               setCompositionRoot(matchList);
               setSizeFull();
             }
 
             public Collection<String> getSelectedNodeIds() {
-                return matchList.getSelectedItems().stream().map((node) -> node.getId()).collect(Collectors.toList());
+                return matchList.getSelectedItems().stream().map((incidence) -> incidence.getOpposite().getId()).collect(Collectors.toList());
             }
 
         }
@@ -214,9 +260,11 @@ public class GraphController<N extends Node, A extends Arc> {
         if (!model.addNode(p)) {
             p = model.getNode(id);
         }
-        p.setContent(getNodeContent(node));
-        p.setIconUrl(getNodeIconUrl(node));
-        p.setStyle(getNodeStyle(node));
+        RenderCache.Rendering rendering = render(node,
+                () -> new RenderCache.Rendering(getNodeContent(node), getNodeIconUrl(node), getNodeStyle(node)));
+        p.setContent(rendering.getContent());
+        p.setIconUrl(rendering.getIconUrl());
+        p.setStyle(rendering.getStyle());
         if ((p.getContent() == null) || p.getContent().isEmpty()) {
             p.setKind(NodeKind.EMPTY);
         }
@@ -224,27 +272,57 @@ public class GraphController<N extends Node, A extends Arc> {
     }
 
     public Collection<NodeProxy> loadMembers(String groupId, Iterable<String> memberIds, GraphRepository<N, A> repository, LayoutEngineModel model) {
-        StringTokenizer tokenizer = new StringTokenizer(groupId);
-        final String parentId = tokenizer.nextToken();
-        final N parent = repository.getNodeById(parentId);
-        Map<String, A> groupArcs = groups.get(groupId);
+        Group group = groups.get(groupId);
         Collection<NodeProxy> loaded = new HashSet<NodeProxy>();
         for (String id : memberIds) {
-            A arc = groupArcs.remove(id);
-            loaded.add(load(repository.getOpposite(parent, arc), model));
-            model.addArc(createArc(arc, repository.getTail(arc), repository.getHead(arc)));
-        }
-        NodeProxy group = model.getNode(groupId);
-        if (groupArcs.size() > 0) {
-            group.setContent(getGroupNodeContent(groupArcs.size()));
-            group.setIconUrl(getGroupNodeIconUrl(groupArcs.size()));
+            Incidence<N, A> incidence = group.take(id, repository);
+            if (incidence != null) {
+                loaded.add(load(incidence.getOpposite(), model));
+                model.addArc(createArc(incidence.getArc(), incidence.getTail(), incidence.getHead()));
+            }
+        }
+        NodeProxy groupNode = model.getNode(groupId);
+        if (group.size() > 0) {
+            updateGroupNode(groupId, model);
         } else {
-            model.removeNode(group);
-            groups.remove(groupId);
+            // the group is kept in case the node comes back, see resync
+            model.removeNode(groupNode);
         }
         return loaded;
     }
 
+    /**
+     * Brings the group nodes in line with a model whose nodes and arcs have been
+     * replaced, e.g. by {@link com.vaadin.graph.layout.PersistentLayoutEngineModel#undo()}:
+     * members whose arcs are gone can be loaded again, members whose arcs are back
+     * count as loaded.
+     */
+    public void resync(LayoutEngineModel model) {
+        for (Map.Entry<String, Group> entry : groups.entrySet()) {
+            Group group = entry.getValue();
+            group.resync(model);
+            updateGroupNode(entry.getKey(), model);
+        }
+    }
+
+    /**
+     * Shows the current size of a group on its node, e.g. once the members have
+     * been fetched and the arc count from the repository has been reconciled.
+     */
+    public void updateGroupNode(String groupId, LayoutEngineModel model) {
+        Group group = groups.get(groupId);
+        NodeProxy groupNode = model.getNode(groupId);
+        if (group != null && groupNode != null) {
+            groupNode.setContent(getGroupNodeContent(group.size()));
+            groupNode.setIconUrl(getGroupNodeIconUrl(group.size()));
+        }
+    }
+
+    /**
+     * Loads the neighbors of a node. If the repository is a {@link CountingGraphRepository}
+     * which {@link CountingGraphRepository#canCount() can count}, group nodes are created from
+     * the arc counts and their members are fetched only when the group is opened. Otherwise the whole neighborhood is fetched at once.
+     */
     public Collection<NodeProxy> loadNeighbors(NodeProxy n, GraphRepository<N, A> repository, LayoutEngineModel model) {
         Set<NodeProxy> neighbors = new HashSet<NodeProxy>();
         if (NodeState.EXPANDED.equals(n.getState())) {
@@ -252,48 +330,403 @@ public class GraphController<N extends Node, A extends Arc> {
         }
         n.setState(NodeState.EXPANDED);
         N node = repository.getNodeById(n.getId());
+        CountingGraphRepository<N, A> counting = counting(repository);
+        if (counting != null) {
+            for (Arc.Direction dir : Arc.Direction.values()) {
+                for (Map.Entry<String, Integer> count : counting.countArcs(node, dir).entrySet()) {
+                    String label = count.getKey();
+                    int nrArcs = count.getValue();
+                    if (nrArcs > getGroupThreshold()) {
+                        neighbors.add(addGroup(new Group(node.getId(), label, dir, nrArcs), model));
+                    } else if (nrArcs > 0) {
+                        addNeighbors(fetchIncidences(node, label, dir, repository).values(), model, neighbors);
+                    }
+                }
+            }
+            return neighbors;
+        }
+        Neighborhood<N, A> neighborhood = BulkGraphRepositoryAdapter.of(repository).getNeighborhood(node);
         for (Arc.Direction dir : Arc.Direction.values()) {
-            for (String label : repository.getArcLabels()) {
-                Map<String, A> arcs = new HashMap<String, A>();
-                for (A arc : repository.getArcs(node, label, dir)) {
-                    arcs.put(repository.getOpposite(node, arc).getId(), arc);
+            for (String label : neighborhood.getLabels(dir)) {
+                Map<String, Incidence<N, A>> arcs = new HashMap<String, Incidence<N, A>>();
+                for (Incidence<N, A> incidence : neighborhood.getIncidences(dir, label)) {
+                    arcs.put(incidence.getOpposite().getId(), incidence);
                 }
-                int nrArcs = arcs.size();
-                if (nrArcs > getGroupThreshold()) {
-                    String groupId = node.getId() + ' ' + dir + ' ' + label;
-                    NodeProxy groupNode = new NodeProxy(groupId);
-                    if (!model.addNode(groupNode)) {
-                        groupNode = model.getNode(groupId);
-                    }
-                    groupNode.setKind(NodeKind.GROUP);
-                    groupNode.setContent(getGroupNodeContent(nrArcs));
-                    groupNode.setIconUrl(getGroupNodeIconUrl(nrArcs));
-                    switch (dir) {
-                    case INCOMING:
-                    	model.addArc(createGroupRel(groupId, label, groupId, node.getId()));
-                        break;
-                    case OUTGOING:
-                    	model.addArc(createGroupRel(groupId, label, node.getId(), groupId));
-                        break;
-                    default:
-                        throw new AssertionError("unexpected direction " + dir);
-                    }
-                    neighbors.add(groupNode);
-                    groups.put(groupId, arcs);
+                if (arcs.size() > getGroupThreshold()) {
+                    neighbors.add(addGroup(new Group(node.getId(), label, dir, arcs), model));
                 } else {
-                    for (A arc : arcs.values()) {
-                        String id = arc.getId();
-                        if (model.getArc(id) == null) {
-                            Node other = repository.getOpposite(node, arc);
-                            NodeProxy vOther = load(other, model);
-                            model.addArc(createArc(arc, repository.getTail(arc), repository.getHead(arc)));
-                            neighbors.add(vOther);
+                    addNeighbors(arcs.values(), model, neighbors);
+                }
+            }
+        }
+        return neighbors;
+    }
+
+    private static <N extends Node, A extends Arc> CountingGraphRepository<N, A> counting(GraphRepository<N, A> repository) {
+        if (repository instanceof CountingGraphRepository && ((CountingGraphRepository<N, A>) repository).canCount()) {
+            return (CountingGraphRepository<N, A>) repository;
+        }
+        return null;
+    }
+
+    /**
+     * Makes the repository requests {@link #loadNeighbors(NodeProxy, GraphRepository, LayoutEngineModel)}
+     * would make for a node, without changing the model. Used by {@link Prefetcher} to warm up a cache.
+     */
+    public void prefetchNeighbors(String nodeId, GraphRepository<N, A> repository) {
+        N node = repository.getNodeById(nodeId);
+        if (node == null) {
+            return;
+        }
+        CountingGraphRepository<N, A> counting = counting(repository);
+        if (counting != null) {
+            for (Arc.Direction dir : Arc.Direction.values()) {
+                for (Map.Entry<String, Integer> count : counting.countArcs(node, dir).entrySet()) {
+                    if (count.getValue() > 0 && count.getValue() <= getGroupThreshold()) {
+                        fetchIncidences(node, count.getKey(), dir, repository);
+                    }
+                }
+            }
+        } else {
+            BulkGraphRepositoryAdapter.of(repository).getNeighborhood(node);
+        }
+    }
+
+    /**
+     * Loads the neighbors of a node, fetching all labels and directions at the same time. The
+     * neighbors fetched within the timeout are loaded right away. If some fetches are still
+     * running the node is marked pending; their results are loaded by tasks passed to the
+     * given executor, which must run them with the session locked (e.g. using {@code UI.access}).
+     * The node stops being pending after the last of them. Late results for a node which has
+     * been collapsed or removed meanwhile are dropped.
+     *
+     * @param timeoutMillis time to wait for the fetches in milliseconds
+     * @param lockedExecutor runs the tasks loading late results with the session locked
+     * @return completes with the neighbors loaded late, after they have been loaded;
+     *         complete right away if nothing is pending; completes exceptionally, outside
+     *         the session lock, if the executor throws a {@link UIDetachedException}
+     */
+    public CompletableFuture<Collection<NodeProxy>> loadNeighbors(final NodeProxy n, AsyncGraphRepository<N, A> repository,
+            final LayoutEngineModel model, long timeoutMillis, final Executor lockedExecutor) {
+        if (NodeState.EXPANDED.equals(n.getState())) {
+            return CompletableFuture.completedFuture(Collections.<NodeProxy>emptySet());
+        }
+        n.setState(NodeState.EXPANDED);
+        N node = repository.getNodeById(n.getId());
+        List<CompletableFuture<List<Incidence<N, A>>>> fetches = new ArrayList<CompletableFuture<List<Incidence<N, A>>>>();
+        for (Arc.Direction dir : Arc.Direction.values()) {
+            for (String label : repository.getArcLabels()) {
+                fetches.add(repository.getIncidencesAsync(node, label, dir));
+            }
+        }
+        try {
+            CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[fetches.size()])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // load what is there, the rest comes later
+        } catch (ExecutionException e) {
+            // failed fetches are reported when loading them
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<CompletableFuture<List<Incidence<N, A>>>> pending = new ArrayList<CompletableFuture<List<Incidence<N, A>>>>();
+        Set<NodeProxy> neighbors = new HashSet<NodeProxy>();
+        for (CompletableFuture<List<Incidence<N, A>>> fetch : fetches) {
+            if (fetch.isDone()) {
+                addIncidences(n.getId(), fetch, model, neighbors);
+            } else {
+                pending.add(fetch);
+            }
+        }
+        final CompletableFuture<Collection<NodeProxy>> late = new CompletableFuture<Collection<NodeProxy>>();
+        if (pending.isEmpty()) {
+            late.complete(Collections.<NodeProxy>emptySet());
+            return late;
+        }
+        n.setPending(true);
+        final Set<NodeProxy> lateNeighbors = new HashSet<NodeProxy>();
+        final int[] remaining = { pending.size() };
+        for (final CompletableFuture<List<Incidence<N, A>>> fetch : pending) {
+            fetch.whenComplete((incidences, failure) -> {
+                try {
+                    lockedExecutor.execute(() -> {
+                        boolean current = model.getNode(n.getId()) == n && NodeState.EXPANDED.equals(n.getState());
+                        if (current) {
+                            addIncidences(n.getId(), fetch, model, lateNeighbors);
                         }
+                        if (--remaining[0] == 0) {
+                            n.setPending(false);
+                            late.complete(lateNeighbors);
+                        }
+                    });
+                } catch (UIDetachedException e) {
+                    // nobody to show the neighbors to, this thread doesn't hold the session lock
+                    n.setPending(false);
+                    late.completeExceptionally(e);
+                }
+            });
+        }
+        return late;
+    }
+
+    private void addIncidences(String nodeId, CompletableFuture<List<Incidence<N, A>>> fetch, LayoutEngineModel model, Set<NodeProxy> neighbors) {
+        List<Incidence<N, A>> incidences;
+        try {
+            incidences = fetch.join();
+        } catch (CompletionException | CancellationException e) {
+            Logger.getLogger(GraphController.class.getName()).log(Level.WARNING, "Fetching neighbors of " + nodeId + " failed", e);
+            return;
+        }
+        if (incidences.isEmpty()) {
+            return;
+        }
+        Map<String, Incidence<N, A>> arcs = new HashMap<String, Incidence<N, A>>();
+        for (Incidence<N, A> incidence : incidences) {
+            arcs.put(incidence.getOpposite().getId(), incidence);
+        }
+        if (arcs.size() > getGroupThreshold()) {
+            Incidence<N, A> first = incidences.get(0);
+            neighbors.add(addGroup(new Group(nodeId, first.getLabel(), first.getDirection(), arcs), model));
+        } else {
+            addNeighbors(arcs.values(), model, neighbors);
+        }
+    }
+
+    private NodeProxy addGroup(Group group, LayoutEngineModel model) {
+        String groupId = group.nodeId + ' ' + group.dir + ' ' + group.label;
+        NodeProxy groupNode = new NodeProxy(groupId);
+        if (!model.addNode(groupNode)) {
+            groupNode = model.getNode(groupId);
+        }
+        int nrArcs = group.size();
+        groupNode.setKind(NodeKind.GROUP);
+        groupNode.setContent(getGroupNodeContent(nrArcs));
+        groupNode.setIconUrl(getGroupNodeIconUrl(nrArcs));
+        switch (group.dir) {
+        case INCOMING:
+        	model.addArc(createGroupRel(groupId, group.label, groupId, group.nodeId));
+            break;
+        case OUTGOING:
+        	model.addArc(createGroupRel(groupId, group.label, group.nodeId, groupId));
+            break;
+        default:
+            throw new AssertionError("unexpected direction " + group.dir);
+        }
+        groups.put(groupId, group);
+        return groupNode;
+    }
+
+    private void addNeighbors(Collection<Incidence<N, A>> incidences, LayoutEngineModel model, Set<NodeProxy> neighbors) {
+        for (Incidence<N, A> incidence : incidences) {
+            String id = incidence.getArc().getId();
+            if (model.getArc(id) == null) {
+                NodeProxy vOther = load(incidence.getOpposite(), model);
+                model.addArc(createArc(incidence.getArc(), incidence.getTail(), incidence.getHead()));
+                neighbors.add(vOther);
+            }
+        }
+    }
+
+    /**
+     * @return arcs of a node with the given label and direction, by opposite node ID
+     */
+    private Map<String, Incidence<N, A>> fetchIncidences(N node, String label, Arc.Direction dir, GraphRepository<N, A> repository) {
+        Map<String, Incidence<N, A>> arcs = new HashMap<String, Incidence<N, A>>();
+        for (A arc : repository.getArcs(node, label, dir)) {
+            N opposite = repository.getOpposite(node, arc);
+            if (dir == Arc.Direction.OUTGOING) {
+                arcs.put(opposite.getId(), new Incidence<N, A>(arc, label, dir, opposite, node, opposite));
+            } else {
+                arcs.put(opposite.getId(), new Incidence<N, A>(arc, label, dir, opposite, opposite, node));
+            }
+        }
+        return arcs;
+    }
+
+    /**
+     * Arcs of a node with one label and direction, shown as a group node. The
+     * arcs are fetched when the members are needed for the first time, members
+     * picked in a paged selector are taken without fetching the others.
+     * <p>
+     * Members are the distinct opposite nodes. Groups created from the arc counts
+     * of a {@link CountingGraphRepository} have the number of arcs as size until
+     * they are fetched, which is larger if there are parallel arcs. Fetching the
+     * members reconciles the size, and the group node shows the reconciled size
+     * from then on. Groups created from fetched arcs count distinct nodes from
+     * the start.
+     */
+    private class Group {
+        private final String nodeId;
+        private final String label;
+        private final Arc.Direction dir;
+        private int count;
+        private Map<String, Incidence<N, A>> members;
+        private final Map<String, Incidence<N, A>> picked = new HashMap<String, Incidence<N, A>>();
+        private final Map<String, Incidence<N, A>> loaded = new HashMap<String, Incidence<N, A>>();
+        private SearchIndex<Incidence<N, A>> index;
+        // matches of the last filter without the loaded members, dropped when members are loaded or unloaded
+        private String unloadedFilter;
+        private List<Incidence<N, A>> unloadedMatches;
+
+        Group(String nodeId, String label, Arc.Direction dir, int count) {
+            this.nodeId = nodeId;
+            this.label = label;
+            this.dir = dir;
+            this.count = count;
+        }
+
+        Group(String nodeId, String label, Arc.Direction dir, Map<String, Incidence<N, A>> members) {
+            this(nodeId, label, dir, members.size());
+            this.members = members;
+        }
+
+        /**
+         * @return number of members not loaded yet, an arc count if the members have not been fetched
+         */
+        int size() {
+            return members == null ? count : members.size();
+        }
+
+        /**
+         * @return members not loaded yet, by node ID
+         */
+        Map<String, Incidence<N, A>> getMembers(GraphRepository<N, A> repository) {
+            if (members == null) {
+                members = fetchIncidences(repository.getNodeById(nodeId), label, dir, repository);
+                members.keySet().removeAll(loaded.keySet());
+            }
+            return members;
+        }
+
+        /**
+         * @return index over the labels of all members, loaded or not, built on first use
+         */
+        SearchIndex<Incidence<N, A>> getSearchIndex(GraphRepository<N, A> repository) {
+            if (index == null) {
+                List<Incidence<N, A>> all = new ArrayList<Incidence<N, A>>(getMembers(repository).values());
+                all.addAll(loaded.values());
+                index = new SearchIndex<Incidence<N, A>>(all, (incidence) -> getNodeLabel(incidence.getOpposite()));
+            }
+            return index;
+        }
+
+        /**
+         * @return members matching the filter without the loaded ones, ranked like by the
+         *         {@link SearchIndex}; the loaded ones are left out once per filter
+         */
+        List<Incidence<N, A>> search(GraphRepository<N, A> repository, String filter) {
+            List<Incidence<N, A>> matches = getSearchIndex(repository).search(filter);
+            if (loaded.isEmpty()) {
+                return matches;
+            }
+            if (unloadedMatches == null || !Objects.equals(filter, unloadedFilter)) {
+                unloadedMatches = matches.stream().filter((incidence) -> !loaded.containsKey(incidence.getOpposite().getId()))
+                        .collect(Collectors.toList());
+                unloadedFilter = filter;
+            }
+            return unloadedMatches;
+        }
+
+        /**
+         * Remembers members selected by the user, so they can be loaded without fetching the others.
+         * Members loaded already are ignored, they are not counted in the group any more.
+         */
+        void pick(Collection<Incidence<N, A>> incidences) {
+            for (Incidence<N, A> incidence : incidences) {
+                String id = incidence.getOpposite().getId();
+                if (!loaded.containsKey(id)) {
+                    picked.put(id, incidence);
+                }
+            }
+        }
+
+        /**
+         * Removes a member from the group.
+         *
+         * @return the member, or null if it is not a member or has been loaded before
+         */
+        Incidence<N, A> take(String id, GraphRepository<N, A> repository) {
+            if (loaded.containsKey(id)) {
+                return null;
+            }
+            Incidence<N, A> incidence = members == null ? picked.remove(id) : null;
+            if (incidence != null) {
+                count--;
+            } else {
+                incidence = getMembers(repository).remove(id);
+            }
+            if (incidence != null) {
+                loaded.put(id, incidence);
+                unloadedMatches = null;
+            }
+            return incidence;
+        }
+
+        /**
+         * Marks members loaded or not according to the presence of their arcs in the model.
+         */
+        void resync(LayoutEngineModel model) {
+            unloadedMatches = null;
+            for (Iterator<Map.Entry<String, Incidence<N, A>>> i = loaded.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<String, Incidence<N, A>> member = i.next();
+                if (model.getArc(member.getValue().getArc().getId()) == null) {
+                    i.remove();
+                    if (members != null) {
+                        members.put(member.getKey(), member.getValue());
+                    } else {
+                        // picked members can be loaded without fetching the group
+                        picked.put(member.getKey(), member.getValue());
+                        count++;
+                    }
+                }
+            }
+            Map<String, Incidence<N, A>> unloaded = members != null ? members : picked;
+            for (Iterator<Map.Entry<String, Incidence<N, A>>> i = unloaded.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<String, Incidence<N, A>> member = i.next();
+                if (model.getArc(member.getValue().getArc().getId()) != null) {
+                    i.remove();
+                    loaded.put(member.getKey(), member.getValue());
+                    if (members == null) {
+                        count--;
                     }
                 }
             }
         }
-        return neighbors;
+    }
+
+    /**
+     * Members of a group paged and filtered by the repository.
+     */
+    @SuppressWarnings("serial")
+    private class MemberDataProvider extends AbstractBackEndDataProvider<Incidence<N, A>, String> {
+        private final Group group;
+        private final PagedGraphRepository<N, A> repository;
+
+        MemberDataProvider(Group group, PagedGraphRepository<N, A> repository) {
+            this.group = group;
+            this.repository = repository;
+        }
+
+        @Override
+        protected Stream<Incidence<N, A>> fetchFromBackEnd(Query<Incidence<N, A>, String> query) {
+            N node = repository.getNodeById(group.nodeId);
+            return repository.getIncidences(node, group.label, group.dir, query.getFilter().orElse(null),
+                    query.getOffset(), query.getLimit()).stream();
+        }
+
+        @Override
+        protected int sizeInBackEnd(Query<Incidence<N, A>, String> query) {
+            N node = repository.getNodeById(group.nodeId);
+            return repository.countArcs(node, group.label, group.dir, query.getFilter().orElse(null));
+        }
+
+        /**
+         * Pages are fetched again while scrolling, rows are identified by the member node.
+         */
+        @Override
+        public Object getId(Incidence<N, A> incidence) {
+            return incidence.getOpposite().getId();
+        }
     }
 
     /**
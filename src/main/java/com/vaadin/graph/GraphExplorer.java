@@ -16,10 +16,21 @@
 package com.vaadin.graph;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.graph.layout.IncrementalFRLayoutEngine;
 import com.vaadin.graph.layout.JungFRLayoutEngine;
+import com.vaadin.graph.layout.PersistentLayoutEngineModel;
 import com.vaadin.graph.shared.ArcProxy;
 import com.vaadin.graph.shared.GraphExplorerServerRpc;
 import com.vaadin.graph.shared.GraphExplorerState;
@@ -32,6 +43,8 @@ import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickEvent;
 import com.vaadin.ui.Button.ClickListener;
 import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
 import com.vaadin.ui.VerticalLayout;
 import com.vaadin.ui.Window;
 
@@ -52,6 +65,17 @@ public class GraphExplorer<N extends Node, A extends Arc> extends AbstractCompon
 
     private final GraphRepository<N, A> repository;
     private LayoutEngine layoutEngine;
+    private final GraphStateTracker stateTracker = new GraphStateTracker();
+
+    private transient ExecutorService layoutExecutor;
+    private transient Future<?> pendingLayout;
+    private transient LayoutScheduler layoutScheduler;
+    private int layoutGeneration = 0;
+    private long expandTimeout = 1000;
+    private transient Prefetcher<N, A> prefetcher;
+    private GraphBudget graphBudget = GraphBudget.UNLIMITED;
+    private final NodeRecency recency = new NodeRecency();
+    private final ReachabilityTracker reachability = new ReachabilityTracker();
 
     /**
      * Constructor (using JUNG library FR layout engine)
@@ -76,12 +100,17 @@ public class GraphExplorer<N extends Node, A extends Arc> extends AbstractCompon
     	this.repository = repository;
         this.controller = controller;
         this.layoutEngine = layoutEngine;
+        anchorLayoutEngine();
 
         NodeProxy homeNode = controller.load(repository.getHomeNode(), layoutEngine.getModel());
+        reachability.addRoot(homeNode.getId());
         expand(homeNode);
-        
-       	getState().nodes = new ArrayList<NodeProxy>(layoutEngine.getModel().getNodes());
-       	getState().arcs = new ArrayList<ArcProxy>(layoutEngine.getModel().getArcs());
+        if (layoutEngine.getModel() instanceof PersistentLayoutEngineModel) {
+        	// the expanded home node is where undo stops
+        	PersistentLayoutEngineModel model = (PersistentLayoutEngineModel) layoutEngine.getModel();
+        	model.commit();
+        	model.clearHistory();
+        }
 
         setSizeFull();
     }
@@ -92,7 +121,64 @@ public class GraphExplorer<N extends Node, A extends Arc> extends AbstractCompon
 
 	public void setLayoutEngine(LayoutEngine layoutEngine) {
 		this.layoutEngine = layoutEngine;
-        refreshLayout(new HashSet<NodeProxy>(), true, null);
+		anchorLayoutEngine();
+		reachability.rebuild(layoutEngine.getModel());
+        refreshLayout(new HashSet<NodeProxy>(), true);
+	}
+
+	/**
+	 * @return true if the layout engine places the nodes around a root, e.g. on rings by depth
+	 */
+	private boolean isRooted() {
+		return layoutEngine instanceof RootedLayoutEngine;
+	}
+
+	/**
+	 * Roots a {@link RootedLayoutEngine} without explicit root at the home node.
+	 */
+	private void anchorLayoutEngine() {
+		if (layoutEngine instanceof RootedLayoutEngine) {
+			RootedLayoutEngine rooted = (RootedLayoutEngine) layoutEngine;
+			if (rooted.getRootId() == null) {
+				rooted.setRootId(repository.getHomeNode().getId());
+			}
+		}
+	}
+
+	public ExecutorService getLayoutExecutor() {
+		return layoutExecutor;
+	}
+
+	/**
+	 * Sets the executor used to compute layouts in the background. If set, layouts are computed
+	 * on a snapshot of the model without holding the session lock, and the resulting positions are
+	 * applied using {@link UI#access}. A newer layout request cancels the one in progress.
+	 * Enable server push (or polling) in the UI for the results to show up without further user interaction.
+	 * Engines which don't support {@link LayoutEngine#snapshot()} are still run synchronously.
+	 * 
+	 * @param layoutExecutor executor for background layouts or null to lay out synchronously
+	 */
+	public void setLayoutExecutor(ExecutorService layoutExecutor) {
+		cancelPendingLayout();
+		this.layoutExecutor = layoutExecutor;
+	}
+
+	public LayoutScheduler getLayoutScheduler() {
+		return layoutScheduler;
+	}
+
+	/**
+	 * Sets a scheduler shared with other sessions to compute layouts in the background. Like with
+	 * {@link #setLayoutExecutor(ExecutorService)}, layouts are computed on a snapshot of the model
+	 * and applied using {@link UI#access}, but the scheduler bounds the number of threads used by
+	 * all sessions, keeps only the latest request of a session and computes smaller layouts under
+	 * load. The scheduler takes precedence over the layout executor.
+	 *
+	 * @param layoutScheduler shared scheduler or null to stop using it
+	 */
+	public void setLayoutScheduler(LayoutScheduler layoutScheduler) {
+		cancelPendingLayout();
+		this.layoutScheduler = layoutScheduler;
 	}
 
     protected GraphController<N, A> getController() {
@@ -108,32 +194,326 @@ public class GraphExplorer<N extends Node, A extends Arc> extends AbstractCompon
       return (GraphExplorerState) super.getState();
     }
 
-	protected void refreshLayout(Set<NodeProxy> lockedNodes, boolean lockExpanded, String removedId) {
+	@Override
+    protected GraphExplorerState getState(boolean markAsDirty) {
+      return (GraphExplorerState) super.getState(markAsDirty);
+    }
+
+	@Override
+	public void beforeClientResponse(boolean initial) {
+		super.beforeClientResponse(initial);
+		if (initial) {
+			stateTracker.reset();
+		}
+		stateTracker.writeDelta(layoutEngine.getModel(), getState(false));
+	}
+
+	/**
+	 * Currently displayed version of the model, incremented with each round trip which changes the graph.
+	 * 
+	 * @return model version
+	 */
+	public int getModelVersion() {
+		return stateTracker.getVersion();
+	}
+
+	protected void refreshLayout(Set<NodeProxy> lockedNodes, boolean lockExpanded) {
 		if (clientWidth > 0 && clientHeight > 0) {
-            if (lockExpanded) {
+            // a rooted engine places expanded nodes on their rings itself
+            if (lockExpanded && !isRooted()) {
                 for (NodeProxy v : layoutEngine.getModel().getNodes()) {
                     if (NodeState.EXPANDED.equals(v.getState())) {
                         lockedNodes.add(v);
                     }
                 }
             }
-            layoutEngine.layout(clientWidth, clientHeight, lockedNodes);
-           	getState().nodes = new ArrayList<NodeProxy>(layoutEngine.getModel().getNodes());
-           	getState().arcs = new ArrayList<ArcProxy>(layoutEngine.getModel().getArcs());
-            getState().removedId = removedId;
+            LayoutEngine snapshot = null;
+            if ((layoutScheduler != null || layoutExecutor != null) && getUI() != null) {
+            	snapshot = layoutEngine.snapshot();
+            }
+            if (snapshot != null && layoutScheduler != null) {
+            	scheduleLayout(snapshot, lockedNodes);
+            } else if (snapshot != null) {
+            	layoutInBackground(snapshot, lockedNodes);
+            } else {
+            	cancelPendingLayout();
+            	layoutEngine.layout(clientWidth, clientHeight, lockedNodes);
+            }
         }
+		markAsDirty();
+	}
+
+	private void layoutInBackground(final LayoutEngine snapshot, Set<NodeProxy> lockedNodes) {
+		cancelPendingLayout();
+		final int generation = ++layoutGeneration;
+		final int width = clientWidth;
+		final int height = clientHeight;
+		final UI ui = getUI();
+		final Collection<NodeProxy> locked = new ArrayList<NodeProxy>();
+		for (NodeProxy v : lockedNodes) {
+			NodeProxy copy = snapshot.getModel().getNode(v.getId());
+			if (copy != null) {
+				locked.add(copy);
+			}
+		}
+		try {
+			pendingLayout = layoutExecutor.submit(() -> {
+				try {
+					snapshot.layout(width, height, locked);
+					if (!Thread.currentThread().isInterrupted()) {
+						ui.access(() -> applyLayout(snapshot, generation));
+					}
+				} catch (UIDetachedException e) {
+					// nobody to show the result to
+				} catch (RuntimeException e) {
+					Logger.getLogger(GraphExplorer.class.getName()).log(Level.WARNING, "Background layout failed", e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// e.g. the executor has been shut down, lay out in the request thread instead
+			Logger.getLogger(GraphExplorer.class.getName()).log(Level.FINE, "Background layout rejected", e);
+			pendingLayout = null;
+			layoutEngine.layout(width, height, lockedNodes);
+		}
+	}
+
+	private void scheduleLayout(final LayoutEngine snapshot, Set<NodeProxy> lockedNodes) {
+		// not cancelled, the scheduler replaces the queued job of this session keeping its place in the queue
+		final int generation = ++layoutGeneration;
+		final UI ui = getUI();
+		final Collection<NodeProxy> locked = new ArrayList<NodeProxy>();
+		for (NodeProxy v : lockedNodes) {
+			NodeProxy copy = snapshot.getModel().getNode(v.getId());
+			if (copy != null) {
+				locked.add(copy);
+			}
+		}
+		layoutScheduler.submit(this, snapshot, clientWidth, clientHeight, locked, (computed) -> {
+			try {
+				ui.access(() -> applyLayout(computed, generation));
+			} catch (UIDetachedException e) {
+				// nobody to show the result to
+			}
+		});
+	}
+
+	private void applyLayout(LayoutEngine snapshot, int generation) {
+		if (generation != layoutGeneration) {
+			// superseded by a newer layout request
+			return;
+		}
+		pendingLayout = null;
+		LayoutEngineModel model = layoutEngine.getModel();
+		for (NodeProxy computed : snapshot.getModel().getNodes()) {
+			NodeProxy node = model.getNode(computed.getId());
+			if (node != null) {
+				node.setX(computed.getX());
+				node.setY(computed.getY());
+			}
+		}
+		markAsDirty();
+	}
+
+	private void cancelPendingLayout() {
+		layoutGeneration++;
+		if (layoutScheduler != null) {
+			layoutScheduler.cancel(this);
+		}
+		if (pendingLayout != null) {
+			pendingLayout.cancel(true);
+			pendingLayout = null;
+		}
+	}
+
+	public Prefetcher<N, A> getPrefetcher() {
+		return prefetcher;
+	}
+
+	/**
+	 * Sets the prefetcher warming up the neighborhoods of nodes the user is likely to expand next.
+	 * While set, nodes are expanded using the caching repository of the prefetcher (unless the
+	 * repository of the explorer is an {@link AsyncGraphRepository}).
+	 *
+	 * @param prefetcher prefetcher over the repository of this explorer, or null to stop prefetching
+	 */
+	public void setPrefetcher(Prefetcher<N, A> prefetcher) {
+		if (this.prefetcher != null) {
+			this.prefetcher.cancel();
+		}
+		this.prefetcher = prefetcher;
+		prefetch();
+	}
+
+	private void prefetch() {
+		if (prefetcher != null) {
+			prefetcher.update(controller, layoutEngine.getModel());
+		}
+	}
+
+	/**
+	 * @return repository to read the graph from, the cache of the prefetcher if there is one
+	 */
+	private GraphRepository<N, A> getReadRepository() {
+		return prefetcher == null ? repository : prefetcher.getRepository();
+	}
+
+	public GraphBudget getGraphBudget() {
+		return graphBudget;
+	}
+
+	/**
+	 * Limits the size of the displayed graph. When a step makes the graph exceed the budget,
+	 * the expanded nodes the user has not touched for the longest time are collapsed (removing
+	 * their collapsed leaves), then least recently touched collapsed nodes are removed, until
+	 * the graph fits. The home node,
+	 * the nodes locked by the step and their neighbors, and pending nodes are never removed.
+	 * The removals reach the client in the same response as the step.
+	 *
+	 * @param graphBudget limits of the graph, {@link GraphBudget#UNLIMITED} to never remove nodes
+	 */
+	public void setGraphBudget(GraphBudget graphBudget) {
+		this.graphBudget = graphBudget == null ? GraphBudget.UNLIMITED : graphBudget;
+		enforceGraphBudget(new HashSet<NodeProxy>());
+		refreshLayout(new HashSet<NodeProxy>(), true);
+		commit();
+		prefetch();
+	}
+
+	/**
+	 * @return estimated heap size of the displayed graph in bytes
+	 */
+	public long getEstimatedGraphBytes() {
+		return GraphBudget.estimateBytes(layoutEngine.getModel());
+	}
+
+	private void touch(String nodeId) {
+		if (!graphBudget.isUnlimited()) {
+			recency.touch(nodeId);
+		}
+	}
+
+	/**
+	 * Removes least recently touched nodes while the graph exceeds the budget.
+	 *
+	 * @param lockedNodes nodes changed by the current step, kept with their neighbors
+	 * @return true if nodes have been removed
+	 */
+	protected boolean enforceGraphBudget(Set<NodeProxy> lockedNodes) {
+		LayoutEngineModel model = layoutEngine.getModel();
+		if (graphBudget.isUnlimited()) {
+			return false;
+		}
+		long nodeBytes = 0;
+		for (NodeProxy node : model.getNodes()) {
+			nodeBytes += GraphBudget.estimateBytes(node);
+		}
+		long arcBytes = 0;
+		int arcs = model.getArcs().size();
+		for (ArcProxy arc : model.getArcs()) {
+			arcBytes += GraphBudget.estimateBytes(arc);
+		}
+		if (!graphBudget.isExceeded(model.getNodes().size(), arcs, nodeBytes + arcBytes)) {
+			return false;
+		}
+		long bytesPerArc = arcs == 0 ? 0 : arcBytes / arcs;
+
+		Set<String> kept = new HashSet<String>();
+		kept.add(repository.getHomeNode().getId());
+		kept.addAll(reachability.getRoots());
+		for (NodeProxy locked : lockedNodes) {
+			kept.add(locked.getId());
+			for (NodeProxy neighbor : model.getNeighbors(locked)) {
+				kept.add(neighbor.getId());
+			}
+		}
+		List<NodeProxy> order = recency.order(model);
+		boolean removed = false;
+		boolean exceeded = true;
+		// first collapse expanded nodes, removing their collapsed leaves but keeping the nodes
+		// themselves to be expanded again, then remove collapsed nodes
+		for (int pass = 0; pass < 2 && exceeded; pass++) {
+			NodeState evicted = pass == 0 ? NodeState.EXPANDED : NodeState.COLLAPSED;
+			for (NodeProxy node : order) {
+				if (!evicted.equals(node.getState()) || node.isPending() || kept.contains(node.getId())
+						|| model.getNode(node.getId()) == null) {
+					continue;
+				}
+				if (pass == 0) {
+					if (removesKept(model, node, kept)) {
+						// e.g. the node connects the home node to the one just expanded
+						continue;
+					}
+					int nodes = model.getNodes().size();
+					Collection<NodeProxy> neighbors = model.getNeighbors(node);
+					collapse(node);
+					int removedNeighbors = 0;
+					for (NodeProxy neighbor : neighbors) {
+						if (model.getNode(neighbor.getId()) == null) {
+							nodeBytes -= GraphBudget.estimateBytes(neighbor);
+							removedNeighbors++;
+						}
+					}
+					if (nodes - model.getNodes().size() > removedNeighbors) {
+						// nodes beyond the neighbors became unreachable
+						nodeBytes = 0;
+						for (NodeProxy remaining : model.getNodes()) {
+							nodeBytes += GraphBudget.estimateBytes(remaining);
+						}
+					}
+				} else {
+					// a collapsed node supports no other node, nothing else becomes unreachable
+					model.removeNode(node);
+					reachability.removed(node);
+					nodeBytes -= GraphBudget.estimateBytes(node);
+				}
+				removed = true;
+				int remainingArcs = model.getArcs().size();
+				exceeded = graphBudget.isExceeded(model.getNodes().size(), remainingArcs,
+						nodeBytes + remainingArcs * bytesPerArc);
+				if (!exceeded) {
+					break;
+				}
+			}
+		}
+		if (removed) {
+			controller.resync(model);
+		}
+		return removed;
+	}
+
+	private boolean removesKept(LayoutEngineModel model, NodeProxy node, Set<String> kept) {
+		for (NodeProxy lost : reachability.removedByCollapse(model, node)) {
+			if (kept.contains(lost.getId())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void detach() {
+		if (prefetcher != null) {
+			prefetcher.cancel();
+		}
+		cancelPendingLayout();
+		super.detach();
 	}
 
 	@Override
 	public void updateNode(String nodeId, NodeState state, int x, int y) {
 		NodeProxy node = layoutEngine.getModel().getNode(nodeId);
 		if (node != null) {
+			boolean collapsed = NodeState.EXPANDED.equals(node.getState()) && NodeState.COLLAPSED.equals(state);
 			node.setState(state);
+			if (collapsed) {
+				pruneUnreachable(layoutEngine.getModel().getNeighbors(node));
+			}
 			node.setX(x);
 			node.setY(y);
+			touch(nodeId);
 			Set<NodeProxy> lockedNodes = new HashSet<NodeProxy>();
 			lockedNodes.add(node);
-			refreshLayout(lockedNodes, true, null);
+			refreshLayout(lockedNodes, true);
 		}
 	}
 
@@ -149,7 +529,7 @@ public class GraphExplorer<N extends Node, A extends Arc> extends AbstractCompon
 		}
     	this.clientWidth = clientWidth;
     	this.clientHeight = clientHeight;
-        refreshLayout(new HashSet<NodeProxy>(), true, null);
+        refreshLayout(new HashSet<NodeProxy>(), true);
 	}
 	
     @Override
@@ -158,39 +538,200 @@ public class GraphExplorer<N extends Node, A extends Arc> extends AbstractCompon
         boolean lockExpanded = true;
     	NodeProxy toggledNode = layoutEngine.getModel().getNode(nodeId);
         if (toggledNode != null) {
+            touch(nodeId);
             if (NodeKind.GROUP.equals(toggledNode.getKind())) {
                 openMemberSelector(nodeId);
             } else {
                 if (NodeState.COLLAPSED.equals(toggledNode.getState())) {
                     expand(toggledNode);
-            		lockedNodes.add(toggledNode);
+                    if (!isRooted()) {
+                    	lockedNodes.add(toggledNode);
+                    }
                     lockExpanded = false;
                 } else {
                     collapse(toggledNode);
                 }
             }
+            Set<NodeProxy> keptNodes = new HashSet<NodeProxy>(lockedNodes);
+            keptNodes.add(toggledNode);
+            enforceGraphBudget(keptNodes);
         }
-        refreshLayout(lockedNodes, lockExpanded, null);
+        refreshLayout(lockedNodes, lockExpanded);
+        commit();
+        prefetch();
+    }
+
+    /**
+     * Undoes the last expand, collapse or member selection, if the model of the layout
+     * engine is a {@link PersistentLayoutEngineModel}.
+     * 
+     * @return false if there is nothing to undo
+     */
+    public boolean undo() {
+    	LayoutEngineModel model = layoutEngine.getModel();
+    	if (!(model instanceof PersistentLayoutEngineModel) || !((PersistentLayoutEngineModel) model).undo()) {
+    		return false;
+    	}
+    	restored();
+    	return true;
+    }
+
+    /**
+     * Redoes the step undone last, if the model of the layout engine is a
+     * {@link PersistentLayoutEngineModel}.
+     * 
+     * @return false if there is nothing to redo
+     */
+    public boolean redo() {
+    	LayoutEngineModel model = layoutEngine.getModel();
+    	if (!(model instanceof PersistentLayoutEngineModel) || !((PersistentLayoutEngineModel) model).redo()) {
+    		return false;
+    	}
+    	restored();
+    	return true;
+    }
+
+    private void restored() {
+    	reachability.rebuild(layoutEngine.getModel());
+    	controller.resync(layoutEngine.getModel());
+    	refreshLayout(new HashSet<NodeProxy>(), true);
+    	prefetch();
     }
 
-    protected void expand(NodeProxy node) {
-		controller.loadNeighbors(node, repository, layoutEngine.getModel());
+    /**
+     * Ends an undoable step if the model keeps a history.
+     */
+    private void commit() {
+    	if (layoutEngine.getModel() instanceof PersistentLayoutEngineModel) {
+    		((PersistentLayoutEngineModel) layoutEngine.getModel()).commit();
+    	}
+    }
+
+    protected void expand(final NodeProxy node) {
+    	if (repository instanceof AsyncGraphRepository) {
+    		expandAsync(node);
+    	} else {
+    		controller.loadNeighbors(node, getReadRepository(), layoutEngine.getModel());
+    	}
+    	reachability.added(layoutEngine.getModel(), layoutEngine.getModel().getNeighbors(node));
         node.setState(NodeState.EXPANDED);
-        if ((clientWidth > 0) && (clientHeight > 0)) {
+        // the position of a node in a rooted layout follows from its depth, not from the last expand,
+        // an incremental layout starts from where the node is
+        if ((clientWidth > 0) && (clientHeight > 0) && !isRooted()
+        		&& !(layoutEngine instanceof IncrementalFRLayoutEngine)) {
         	node.setX(clientWidth / 2);
         	node.setY(clientHeight / 2);
         }
 	}
     
+	/**
+	 * Expands a node waiting at most {@link #getExpandTimeout()} for the repository. Neighbors
+	 * arriving later are added using {@link UI#access}, followed by a new layout.
+	 */
+	private void expandAsync(final NodeProxy node) {
+		final UI ui = getUI();
+		if (ui == null) {
+			// not attached yet (e.g. the home node), nobody to push late results to
+			controller.loadNeighbors(node, (AsyncGraphRepository<N, A>) repository, layoutEngine.getModel(),
+					Long.MAX_VALUE, Runnable::run);
+			return;
+		}
+		CompletableFuture<Collection<NodeProxy>> late = controller.loadNeighbors(node,
+				(AsyncGraphRepository<N, A>) repository, layoutEngine.getModel(), expandTimeout,
+				(command) -> ui.access(command::run));
+		if (node.isPending()) {
+			// a late result completes with the session locked, a detached UI exceptionally without the lock
+			late.thenAccept((loaded) -> {
+				reachability.added(layoutEngine.getModel(), loaded);
+				Set<NodeProxy> lockedNodes = new HashSet<NodeProxy>();
+				lockedNodes.add(node);
+				enforceGraphBudget(lockedNodes);
+				refreshLayout(isRooted() ? new HashSet<NodeProxy>() : lockedNodes, true);
+				// the late neighbors are a step of their own, not part of the user's next one
+				commit();
+				prefetch();
+			});
+		}
+	}
+
+	public long getExpandTimeout() {
+		return expandTimeout;
+	}
+
+	/**
+	 * Sets how long expanding a node waits for an {@link AsyncGraphRepository}. Neighbors
+	 * fetched later are added when they arrive, the node is shown as pending until then.
+	 * Enable server push (or polling) in the UI for them to show up without further user interaction.
+	 * 
+	 * @param expandTimeout time to wait in milliseconds
+	 */
+	public void setExpandTimeout(long expandTimeout) {
+		this.expandTimeout = expandTimeout;
+	}
+
+    /**
+     * Collapses a node, removing its collapsed leaves and whatever can't be reached
+     * from the home node or a pinned node any more.
+     */
     protected void collapse(NodeProxy node) {
         node.setState(NodeState.COLLAPSED);
-        for (NodeProxy neighbor : layoutEngine.getModel().getNeighbors(node)) {
+        Collection<NodeProxy> neighbors = layoutEngine.getModel().getNeighbors(node);
+        for (NodeProxy neighbor : neighbors) {
             boolean collapsed = NodeState.COLLAPSED.equals(neighbor.getState());
             boolean leafNode = layoutEngine.getModel().degree(neighbor) == 1;
             if (collapsed && leafNode) {
             	layoutEngine.getModel().removeNode(neighbor);
+            	reachability.removed(neighbor);
             }
         }
+        pruneUnreachable(neighbors);
+    }
+
+    /**
+     * Removes the nodes which can't be reached from the home node or a pinned node any more.
+     *
+     * @param seeds nodes which may have lost their connection, e.g. the neighbors of a collapsed node
+     */
+    private void pruneUnreachable(Collection<NodeProxy> seeds) {
+    	if (!reachability.prune(layoutEngine.getModel(), seeds).isEmpty()) {
+    		controller.resync(layoutEngine.getModel());
+    	}
+    }
+
+    /**
+     * Pins a displayed node: it stays, along with what has been expanded from it, when the
+     * nodes connecting it to the home node are collapsed. Like on the client, a collapsed
+     * leaf is still removed when its only neighbor is collapsed.
+     */
+    public void pin(String nodeId) {
+    	if (layoutEngine.getModel().getNode(nodeId) != null) {
+    		reachability.addRoot(nodeId);
+    	}
+    }
+
+    /**
+     * Unpins a node, removing it and what has been expanded from it if it can't be reached
+     * from the home node or another pinned node.
+     */
+    public void unpin(String nodeId) {
+    	if (nodeId.equals(repository.getHomeNode().getId()) || !reachability.isRoot(nodeId)) {
+    		return;
+    	}
+    	reachability.removeRoot(nodeId);
+    	NodeProxy node = layoutEngine.getModel().getNode(nodeId);
+    	if (node != null) {
+    		pruneUnreachable(Collections.singleton(node));
+    		refreshLayout(new HashSet<NodeProxy>(), true);
+    		commit();
+    		prefetch();
+    	}
+    }
+
+    /**
+     * @return IDs of the home node and the pinned nodes
+     */
+    public Set<String> getPinnedNodeIds() {
+    	return reachability.getRoots();
     }
 
     protected void openMemberSelector(final String groupId) {
@@ -200,7 +741,10 @@ public class GraphExplorer<N extends Node, A extends Arc> extends AbstractCompon
         layout.setSpacing(true);
         layout.setSizeFull();
 
-        final NodeSelector selector = controller.getMemberSelector(groupId, repository);
+        final NodeSelector selector = controller.getMemberSelector(groupId, getReadRepository());
+        // creating the selector may have fetched the members
+        controller.updateGroupNode(groupId, layoutEngine.getModel());
+        markAsDirty();
         layout.addComponent(selector);
         layout.setExpandRatio(selector, 1.0f);
 
@@ -230,15 +774,29 @@ public class GraphExplorer<N extends Node, A extends Arc> extends AbstractCompon
 
             public void buttonClick(ClickEvent event) {
             	getUI().removeWindow(dialog);
-                controller.loadMembers(groupId, selector.getSelectedNodeIds(), repository, layoutEngine.getModel());
+                Collection<String> memberIds = selector.getSelectedNodeIds();
+                Collection<NodeProxy> members = controller.loadMembers(groupId, memberIds,
+                		getReadRepository(), layoutEngine.getModel());
+                reachability.added(layoutEngine.getModel(), members);
                 Set<NodeProxy> lockedNodes = new HashSet<NodeProxy>();
                 NodeProxy groupNode = layoutEngine.getModel().getNode(groupId);
-                if (groupNode == null) {
-                    refreshLayout(lockedNodes, true, groupId);
-                } else {
+                if (groupNode != null) {
                     lockedNodes.add(groupNode);
-                    refreshLayout(lockedNodes, true, null);
                 }
+                touch(groupId);
+                // the members are neighbors of the node the group belongs to, not of the group node
+                Set<NodeProxy> keptNodes = new HashSet<NodeProxy>(lockedNodes);
+                for (String memberId : memberIds) {
+                    touch(memberId);
+                    NodeProxy member = layoutEngine.getModel().getNode(memberId);
+                    if (member != null) {
+                        keptNodes.add(member);
+                    }
+                }
+                enforceGraphBudget(keptNodes);
+                refreshLayout(lockedNodes, true);
+                commit();
+                prefetch();
             }
         });
     }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2011-2013 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.graph;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.vaadin.graph.layout.PersistentLayoutEngineModel;
+import com.vaadin.graph.layout.PersistentLayoutEngineModel.Diff;
+import com.vaadin.graph.layout.PersistentLayoutEngineModel.Version;
+import com.vaadin.graph.shared.ArcProxy;
+import com.vaadin.graph.shared.GraphExplorerState;
+import com.vaadin.graph.shared.NodePosition;
+import com.vaadin.graph.shared.NodeProxy;
+import com.vaadin.graph.shared.NodeProxy.NodeKind;
+import com.vaadin.graph.shared.NodeProxy.NodeState;
+
+/**
+ * Remembers what has been sent to the client and computes the changes of the
+ * layout model since then, so that a round trip only carries the part of the
+ * graph which has actually changed.
+ */
+class GraphStateTracker implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, SentNode> sentNodes = new HashMap<String, SentNode>();
+	private final Set<String> sentArcs = new HashSet<String>();
+	private int version = 0;
+	// version of a persistent model last sent, to find added and removed elements by diffing
+	private Version sentVersion;
+
+	/**
+	 * Forget everything sent so far, the next delta will contain the whole model.
+	 */
+	void reset() {
+		sentNodes.clear();
+		sentArcs.clear();
+		sentVersion = null;
+	}
+
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Compare the model with what the client knows and write the differences to
+	 * the state. The state is left untouched if nothing has changed.
+	 *
+	 * @param model current layout model
+	 * @param state shared state to fill in
+	 * @return true if there were any changes
+	 */
+	boolean writeDelta(LayoutEngineModel model, GraphExplorerState state) {
+		ArrayList<NodeProxy> addedNodes = new ArrayList<NodeProxy>();
+		ArrayList<NodeProxy> updatedNodes = new ArrayList<NodeProxy>();
+		ArrayList<NodePosition> movedNodes = new ArrayList<NodePosition>();
+		ArrayList<String> removedNodes = new ArrayList<String>();
+		ArrayList<ArcProxy> addedArcs = new ArrayList<ArcProxy>();
+		ArrayList<String> removedArcs = new ArrayList<String>();
+
+		Version current = model instanceof PersistentLayoutEngineModel
+				? ((PersistentLayoutEngineModel) model).snapshot() : null;
+		Set<String> seen = null;
+		if (current != null && sentVersion != null) {
+			// removals and arcs in time proportional to the changes, replaced proxies are removed and added
+			Diff diff = PersistentLayoutEngineModel.diff(sentVersion, current);
+			for (NodeProxy node : diff.getRemovedNodes()) {
+				if (sentNodes.remove(node.getId()) != null) {
+					removedNodes.add(node.getId());
+				}
+			}
+			for (ArcProxy arc : diff.getRemovedArcs()) {
+				if (sentArcs.remove(arc.getId())) {
+					removedArcs.add(arc.getId());
+				}
+			}
+			for (ArcProxy arc : diff.getAddedArcs()) {
+				if (sentArcs.add(arc.getId())) {
+					addedArcs.add(arc);
+				}
+			}
+		} else {
+			seen = new HashSet<String>();
+		}
+		sentVersion = current;
+
+		// proxies are mutable, their content and positions have to be compared one by one
+		for (NodeProxy node : model.getNodes()) {
+			if (seen != null) {
+				seen.add(node.getId());
+			}
+			SentNode sent = sentNodes.get(node.getId());
+			if (sent == null) {
+				addedNodes.add(node);
+				sentNodes.put(node.getId(), new SentNode(node));
+			} else if (!sent.hasSameContent(node)) {
+				updatedNodes.add(node);
+				sent.update(node);
+			} else if (!sent.hasSamePosition(node)) {
+				movedNodes.add(new NodePosition(node.getId(), node.getX(), node.getY()));
+				sent.update(node);
+			}
+		}
+		if (seen != null) {
+			writeRemovedAndArcs(model, seen, removedNodes, addedArcs, removedArcs);
+		}
+
+		boolean changed = !addedNodes.isEmpty() || !updatedNodes.isEmpty() || !movedNodes.isEmpty()
+				|| !removedNodes.isEmpty() || !addedArcs.isEmpty() || !removedArcs.isEmpty();
+		if (changed) {
+			state.addedNodes = addedNodes;
+			state.updatedNodes = updatedNodes;
+			state.movedNodes = movedNodes;
+			state.removedNodes = removedNodes;
+			state.addedArcs = addedArcs;
+			state.removedArcs = removedArcs;
+			state.version = ++version;
+		}
+		return changed;
+	}
+
+	/**
+	 * Finds removed nodes and added and removed arcs by comparing the whole model with what has been sent.
+	 */
+	private void writeRemovedAndArcs(LayoutEngineModel model, Set<String> seen, ArrayList<String> removedNodes,
+			ArrayList<ArcProxy> addedArcs, ArrayList<String> removedArcs) {
+		for (Iterator<String> i = sentNodes.keySet().iterator(); i.hasNext();) {
+			String id = i.next();
+			if (!seen.contains(id)) {
+				removedNodes.add(id);
+				i.remove();
+			}
+		}
+
+		seen.clear();
+		for (ArcProxy arc : model.getArcs()) {
+			seen.add(arc.getId());
+			if (sentArcs.add(arc.getId())) {
+				addedArcs.add(arc);
+			}
+		}
+		for (Iterator<String> i = sentArcs.iterator(); i.hasNext();) {
+			String id = i.next();
+			if (!seen.contains(id)) {
+				removedArcs.add(id);
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * The part of a node the client has last been told about.
+	 */
+	private static class SentNode implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private int x;
+		private int y;
+		private String content;
+		private String iconUrl;
+		private String style;
+		private NodeKind kind;
+		private NodeState state;
+		private boolean pending;
+
+		SentNode(NodeProxy node) {
+			update(node);
+		}
+
+		void update(NodeProxy node) {
+			x = node.getX();
+			y = node.getY();
+			content = node.getContent();
+			iconUrl = node.getIconUrl();
+			style = node.getStyle();
+			kind = node.getKind();
+			state = node.getState();
+			pending = node.isPending();
+		}
+
+		boolean hasSamePosition(NodeProxy node) {
+			return x == node.getX() && y == node.getY();
+		}
+
+		boolean hasSameContent(NodeProxy node) {
+			return kind == node.getKind() && state == node.getState() && pending == node.isPending() && Objects.equals(content, node.getContent())
+					&& Objects.equals(iconUrl, node.getIconUrl()) && Objects.equals(style, node.getStyle());
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+
+/**
+ * An arc seen from one of its end nodes, with both ends already resolved.
+ */
+public class Incidence<N extends Node, A extends Arc> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final A arc;
+	private final String label;
+	private final Arc.Direction direction;
+	private final N opposite;
+	private final N tail;
+	private final N head;
+
+	/**
+	 * @param arc the arc
+	 * @param label label the arc is listed under
+	 * @param direction OUTGOING if the arc points away from the node it is seen from
+	 * @param opposite node at the other end of the arc
+	 * @param tail node the arc points away from
+	 * @param head node the arc points to
+	 */
+	public Incidence(A arc, String label, Arc.Direction direction, N opposite, N tail, N head) {
+		this.arc = arc;
+		this.label = label;
+		this.direction = direction;
+		this.opposite = opposite;
+		this.tail = tail;
+		this.head = head;
+	}
+
+	public A getArc() {
+		return arc;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public Arc.Direction getDirection() {
+		return direction;
+	}
+
+	public N getOpposite() {
+		return opposite;
+	}
+
+	public N getTail() {
+		return tail;
+	}
+
+	public N getHead() {
+		return head;
+	}
+}
@@ -0,0 +1,50 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+
+/**
+ * Limits for an iterative layout calculation. The calculation stops as soon as
+ * any of the limits is reached and keeps the positions computed so far.
+ * A limit of zero means no limit.
+ */
+public final class LayoutBudget implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Run until the layout algorithm itself considers the layout done */
+	public static final LayoutBudget UNLIMITED = new LayoutBudget(0, 0, 0);
+
+	private final int maxIterations;
+	private final long maxMillis;
+	private final double displacementThreshold;
+
+	/**
+	 * @param maxIterations maximal number of iterations
+	 * @param maxMillis maximal wall-clock time of the calculation in milliseconds
+	 * @param displacementThreshold the calculation is considered converged once
+	 *        the average displacement of a node in an iteration falls below this
+	 *        number of pixels
+	 */
+	public LayoutBudget(int maxIterations, long maxMillis, double displacementThreshold) {
+		this.maxIterations = maxIterations;
+		this.maxMillis = maxMillis;
+		this.displacementThreshold = displacementThreshold;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public long getMaxMillis() {
+		return maxMillis;
+	}
+
+	public double getDisplacementThreshold() {
+		return displacementThreshold;
+	}
+
+	@Override
+	public String toString() {
+		return "LayoutBudget[iterations=" + maxIterations + ", millis=" + maxMillis + ", displacement="
+				+ displacementThreshold + "]";
+	}
+}
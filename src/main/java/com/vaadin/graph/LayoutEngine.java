@@ -23,4 +23,14 @@ public interface LayoutEngine extends Serializable {
 	 */
 	public void layout(final int width, final int height, Collection<NodeProxy> lockedNodes);
 
+	/**
+	 * Create an engine of the same kind working on a detached copy of this engine's model.
+	 * The copy can be laid out on a background thread while the original model keeps being modified.
+	 * 
+	 * @return engine working on a copy of the model or null if the engine does not support it
+	 */
+	public default LayoutEngine snapshot() {
+		return null;
+	}
+
 }
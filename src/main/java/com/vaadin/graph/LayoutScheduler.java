@@ -0,0 +1,328 @@
+package com.vaadin.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Computes layouts for many sessions on a bounded number of threads, e.g. one
+ * scheduler per JVM shared by all {@link GraphExplorer}s, see
+ * {@link GraphExplorer#setLayoutScheduler(LayoutScheduler)}.
+ * <p>
+ * Every session has at most one queued layout: a newer request replaces the
+ * queued one (keeping its place in the queue) and interrupts the running one.
+ * Small graphs are laid out first, unless a job has waited longer than the
+ * maximal wait, then jobs are taken in the order they were queued. Under load,
+ * when the queue is deeper than the degrade depth or a job has waited longer
+ * than the maximal wait, {@link BudgetedLayoutEngine}s run with the degraded
+ * budget. Other engines run unchanged.
+ */
+public class LayoutScheduler {
+
+	private static final int WAIT_SAMPLES = 1024;
+
+	private final int workers;
+	private final int degradeDepth;
+	private final long maxWaitMillis;
+	private final LayoutBudget degradedBudget;
+	private final ExecutorService executor;
+
+	// queued jobs by session in the order they were queued, and by size
+	private final LinkedHashMap<Object, Job> queued = new LinkedHashMap<Object, Job>();
+	private final TreeSet<Job> bySize = new TreeSet<Job>();
+	private final Map<Object, Job> running = new HashMap<Object, Job>();
+	private int activeWorkers = 0;
+	private long sequence = 0;
+
+	private long submitted = 0;
+	private long coalesced = 0;
+	private long completed = 0;
+	private long degraded = 0;
+	private final long[] waits = new long[WAIT_SAMPLES];
+	private int waitCount = 0;
+	private long maxWait = 0;
+
+	/**
+	 * Degrades to 50 iterations and 100 milliseconds when more than two jobs per
+	 * thread are queued or a job has waited for more than 500 milliseconds.
+	 *
+	 * @param workers number of threads computing layouts
+	 */
+	public LayoutScheduler(int workers) {
+		this(workers, 2 * workers, 500, new LayoutBudget(50, 100, 0));
+	}
+
+	/**
+	 * @param workers number of threads computing layouts
+	 * @param degradeDepth number of queued jobs from which on jobs run with the degraded budget
+	 * @param maxWaitMillis wait time from which on a job is taken before smaller ones and runs with the
+	 *        degraded budget
+	 * @param degradedBudget budget of jobs run under load
+	 */
+	public LayoutScheduler(int workers, int degradeDepth, long maxWaitMillis, LayoutBudget degradedBudget) {
+		this.workers = workers;
+		this.degradeDepth = degradeDepth;
+		this.maxWaitMillis = maxWaitMillis;
+		this.degradedBudget = degradedBudget;
+		final AtomicInteger threads = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(workers, (runnable) -> {
+			Thread thread = new Thread(runnable, "layout-scheduler-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queues a layout, replacing the layout queued for the same session and
+	 * interrupting the one running for it.
+	 *
+	 * @param session owner of the job, e.g. the explorer
+	 * @param engine engine to run, usually a {@link LayoutEngine#snapshot() snapshot}
+	 * @param width width of the layout
+	 * @param height height of the layout
+	 * @param lockedNodes nodes of the engine's model which must not move
+	 * @param done called by the computing thread when the layout has been computed
+	 */
+	public synchronized void submit(Object session, LayoutEngine engine, int width, int height,
+			Collection<NodeProxy> lockedNodes, Consumer<LayoutEngine> done) {
+		submitted++;
+		Job job = new Job(session, engine, width, height, lockedNodes, done);
+		Job previous = queued.get(session);
+		if (previous != null) {
+			// keep the place in the queue
+			coalesced++;
+			bySize.remove(previous);
+			job.queuedAt = previous.queuedAt;
+		}
+		queued.put(session, job);
+		bySize.add(job);
+		Job current = running.get(session);
+		if (current != null) {
+			current.thread.interrupt();
+		}
+		if (activeWorkers < workers) {
+			activeWorkers++;
+			executor.execute(this::work);
+		}
+	}
+
+	/**
+	 * Drops the queued layout of a session and interrupts the running one.
+	 */
+	public synchronized void cancel(Object session) {
+		Job job = queued.remove(session);
+		if (job != null) {
+			bySize.remove(job);
+		}
+		Job current = running.get(session);
+		if (current != null) {
+			current.thread.interrupt();
+		}
+	}
+
+	/**
+	 * Stops the threads, queued layouts are dropped.
+	 */
+	public synchronized void shutdown() {
+		queued.clear();
+		bySize.clear();
+		executor.shutdownNow();
+	}
+
+	private void work() {
+		while (true) {
+			Job job = next();
+			if (job == null) {
+				return;
+			}
+			try {
+				job.engine.layout(job.width, job.height, job.lockedNodes);
+				if (!Thread.currentThread().isInterrupted()) {
+					job.done.accept(job.engine);
+				}
+			} catch (RuntimeException e) {
+				Logger.getLogger(LayoutScheduler.class.getName()).log(Level.WARNING, "Scheduled layout failed", e);
+			} finally {
+				finished(job);
+			}
+		}
+	}
+
+	private synchronized Job next() {
+		if (queued.isEmpty()) {
+			activeWorkers--;
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		Job job = queued.values().iterator().next();
+		boolean late = now - job.queuedAt >= maxWaitMillis;
+		// a session whose previous layout is still being interrupted has to wait for it
+		if (!late || running.containsKey(job.session)) {
+			job = null;
+			for (Job candidate : bySize) {
+				if (!running.containsKey(candidate.session)) {
+					job = candidate;
+					break;
+				}
+			}
+			if (job == null) {
+				activeWorkers--;
+				return null;
+			}
+		}
+		boolean overloaded = queued.size() > degradeDepth;
+		queued.remove(job.session);
+		bySize.remove(job);
+		running.put(job.session, job);
+		job.thread = Thread.currentThread();
+
+		long wait = now - job.queuedAt;
+		waits[waitCount++ % WAIT_SAMPLES] = wait;
+		maxWait = Math.max(maxWait, wait);
+		if ((overloaded || wait >= maxWaitMillis) && job.engine instanceof BudgetedLayoutEngine) {
+			BudgetedLayoutEngine budgeted = (BudgetedLayoutEngine) job.engine;
+			budgeted.setBudget(tighter(budgeted.getBudget(), degradedBudget));
+			degraded++;
+		}
+		return job;
+	}
+
+	private synchronized void finished(Job job) {
+		running.remove(job.session);
+		completed++;
+		// clear the interrupt meant for this job, the next one belongs to someone else
+		Thread.interrupted();
+		if (queued.containsKey(job.session) && activeWorkers < workers) {
+			// a worker may have given up on the session's new job while this one was running
+			activeWorkers++;
+			executor.execute(this::work);
+		}
+	}
+
+	private static LayoutBudget tighter(LayoutBudget a, LayoutBudget b) {
+		return new LayoutBudget(minLimit(a.getMaxIterations(), b.getMaxIterations()),
+				minLimit(a.getMaxMillis(), b.getMaxMillis()),
+				Math.max(a.getDisplacementThreshold(), b.getDisplacementThreshold()));
+	}
+
+	private static int minLimit(int a, int b) {
+		return (int) minLimit((long) a, (long) b);
+	}
+
+	private static long minLimit(long a, long b) {
+		// zero means no limit
+		return a <= 0 ? b : b <= 0 ? a : Math.min(a, b);
+	}
+
+	/**
+	 * @return number of queued layouts, at most one per session
+	 */
+	public synchronized int getQueueDepth() {
+		return queued.size();
+	}
+
+	/**
+	 * @return number of layouts being computed
+	 */
+	public synchronized int getRunning() {
+		return running.size();
+	}
+
+	/**
+	 * @return number of layouts submitted since the scheduler has been created
+	 */
+	public synchronized long getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * @return number of queued layouts replaced by a newer one of the same session
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * @return number of layouts computed or interrupted
+	 */
+	public synchronized long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return number of layouts run with the degraded budget
+	 */
+	public synchronized long getDegraded() {
+		return degraded;
+	}
+
+	/**
+	 * @return longest time a layout has waited in the queue, in milliseconds
+	 */
+	public synchronized long getMaxWaitMillis() {
+		return maxWait;
+	}
+
+	/**
+	 * @param percentile percentile between 0 and 100, e.g. 99
+	 * @return wait time in the queue of the last 1024 layouts at the percentile, in milliseconds
+	 */
+	public synchronized long getWaitMillis(double percentile) {
+		int n = Math.min(waitCount, WAIT_SAMPLES);
+		if (n == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(waits, n);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * n) - 1;
+		return sorted[Math.max(0, Math.min(n - 1, index))];
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LayoutScheduler[queued=" + queued.size() + ", running=" + running.size() + ", submitted=" + submitted
+				+ ", coalesced=" + coalesced + ", degraded=" + degraded + ", p99Wait=" + getWaitMillis(99) + "]";
+	}
+
+	private final class Job implements Comparable<Job> {
+		private final Object session;
+		private final LayoutEngine engine;
+		private final int width;
+		private final int height;
+		private final Collection<NodeProxy> lockedNodes;
+		private final Consumer<LayoutEngine> done;
+		private final int size;
+		private final long order = sequence++;
+		private long queuedAt = System.currentTimeMillis();
+		private Thread thread;
+
+		Job(Object session, LayoutEngine engine, int width, int height, Collection<NodeProxy> lockedNodes,
+				Consumer<LayoutEngine> done) {
+			this.session = session;
+			this.engine = engine;
+			this.width = width;
+			this.height = height;
+			this.lockedNodes = new ArrayList<NodeProxy>(lockedNodes);
+			this.done = done;
+			this.size = engine.getModel().getNodes().size() + engine.getModel().getArcs().size();
+		}
+
+		@Override
+		public int compareTo(Job other) {
+			int bySize = Integer.compare(size, other.size);
+			return bySize != 0 ? bySize : Long.compare(order, other.order);
+		}
+	}
+}
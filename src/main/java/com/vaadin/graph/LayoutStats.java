@@ -0,0 +1,79 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+
+/**
+ * Statistics of a finished layout calculation.
+ */
+public final class LayoutStats implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Reason why a layout calculation stopped
+	 */
+	public static enum StopReason {
+		/** the algorithm finished on its own */
+		DONE,
+		/** average displacement fell below the threshold */
+		CONVERGED,
+		/** maximal number of iterations reached */
+		ITERATION_LIMIT,
+		/** maximal time reached */
+		TIME_LIMIT,
+		/** the calculating thread has been interrupted */
+		INTERRUPTED;
+	}
+
+	private final int iterations;
+	private final long elapsedMillis;
+	private final double energy;
+	private final double averageDisplacement;
+	private final StopReason stopReason;
+
+	public LayoutStats(int iterations, long elapsedMillis, double energy, double averageDisplacement,
+			StopReason stopReason) {
+		this.iterations = iterations;
+		this.elapsedMillis = elapsedMillis;
+		this.energy = energy;
+		this.averageDisplacement = averageDisplacement;
+		this.stopReason = stopReason;
+	}
+
+	/**
+	 * @return number of iterations run
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return wall-clock time of the calculation in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return energy of the last iteration, the sum of squared node displacements
+	 */
+	public double getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * @return average displacement of a node in the last iteration
+	 */
+	public double getAverageDisplacement() {
+		return averageDisplacement;
+	}
+
+	public StopReason getStopReason() {
+		return stopReason;
+	}
+
+	@Override
+	public String toString() {
+		return "LayoutStats[iterations=" + iterations + ", millis=" + elapsedMillis + ", energy=" + energy
+				+ ", displacement=" + averageDisplacement + ", stop=" + stopReason + "]";
+	}
+}
@@ -0,0 +1,74 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All arcs of a node, grouped by direction and label.
+ */
+public class Neighborhood<N extends Node, A extends Arc> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final N node;
+	private final Map<Arc.Direction, Map<String, List<Incidence<N, A>>>> incidences = new EnumMap<Arc.Direction, Map<String, List<Incidence<N, A>>>>(
+			Arc.Direction.class);
+	private int size = 0;
+
+	public Neighborhood(N node) {
+		this.node = node;
+		for (Arc.Direction dir : Arc.Direction.values()) {
+			incidences.put(dir, new LinkedHashMap<String, List<Incidence<N, A>>>());
+		}
+	}
+
+	/**
+	 * Adds an arc of the node. Labels keep the order in which they have been added first.
+	 * 
+	 * @param incidence arc seen from the node
+	 */
+	public void add(Incidence<N, A> incidence) {
+		Map<String, List<Incidence<N, A>>> byLabel = incidences.get(incidence.getDirection());
+		List<Incidence<N, A>> list = byLabel.get(incidence.getLabel());
+		if (list == null) {
+			list = new ArrayList<Incidence<N, A>>();
+			byLabel.put(incidence.getLabel(), list);
+		}
+		list.add(incidence);
+		size++;
+	}
+
+	public N getNode() {
+		return node;
+	}
+
+	/**
+	 * @param dir direction of the arcs
+	 * @return labels of the arcs in the given direction
+	 */
+	public Collection<String> getLabels(Arc.Direction dir) {
+		return Collections.unmodifiableSet(incidences.get(dir).keySet());
+	}
+
+	/**
+	 * @param dir direction of the arcs
+	 * @param label label of the arcs
+	 * @return arcs with the given direction and label
+	 */
+	public List<Incidence<N, A>> getIncidences(Arc.Direction dir, String label) {
+		List<Incidence<N, A>> list = incidences.get(dir).get(label);
+		return list == null ? Collections.<Incidence<N, A>> emptyList() : Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return number of arcs of the node
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,47 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Remembers in which order the user has touched the displayed nodes, to find
+ * the least recently used ones when the graph has to shrink.
+ */
+class NodeRecency implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	// access ordered, least recently touched first
+	private final LinkedHashMap<String, Boolean> touched = new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+
+	void touch(String nodeId) {
+		touched.put(nodeId, Boolean.TRUE);
+	}
+
+	/**
+	 * Forgets removed nodes and counts nodes seen for the first time as just touched.
+	 *
+	 * @return the nodes of the model, least recently touched first
+	 */
+	List<NodeProxy> order(LayoutEngineModel model) {
+		for (NodeProxy node : model.getNodes()) {
+			if (!touched.containsKey(node.getId())) {
+				touched.put(node.getId(), Boolean.TRUE);
+			}
+		}
+		List<NodeProxy> order = new ArrayList<NodeProxy>(touched.size());
+		for (Iterator<String> i = touched.keySet().iterator(); i.hasNext();) {
+			NodeProxy node = model.getNode(i.next());
+			if (node == null) {
+				i.remove();
+			} else {
+				order.add(node);
+			}
+		}
+		return order;
+	}
+}
@@ -0,0 +1,47 @@
+package com.vaadin.graph;
+
+import java.util.List;
+
+/**
+ * Optional extension of {@link GraphRepository} returning the arcs of a node
+ * page by page, filtered by the repository. The member selector of a group
+ * node is backed by these methods, so only the visible rows of a large group
+ * are fetched and filtering runs where the data is (e.g. in a database index).
+ */
+public interface PagedGraphRepository<N extends Node, A extends Arc> extends CountingGraphRepository<N, A> {
+
+	/**
+	 * Answer a page of the arcs connected to the given node, with the given
+	 * label, in the given direction, together with their opposite nodes. The
+	 * order must be stable between calls.
+	 * 
+	 * @param node graph node
+	 * @param label arc label
+	 * @param dir INCOMING for arcs pointing towards the given node, OUTGOING
+	 *        for arcs pointing away from the given node
+	 * @param filter text typed by the user, only arcs whose opposite node
+	 *        matches it are returned; null or empty for all arcs
+	 * @param offset index of the first arc to return
+	 * @param limit maximal number of arcs to return
+	 * @return arcs with their opposite nodes
+	 */
+	public List<Incidence<N, A>> getIncidences(N node, String label, Arc.Direction dir, String filter, int offset,
+			int limit);
+
+	/**
+	 * Counts the arcs {@link #getIncidences(Node, String, Arc.Direction, String, int, int)} pages through.
+	 * 
+	 * @param node graph node
+	 * @param label arc label
+	 * @param dir arc direction
+	 * @param filter text typed by the user, null or empty for all arcs
+	 * @return number of matching arcs
+	 */
+	public int countArcs(N node, String label, Arc.Direction dir, String filter);
+
+	@Override
+	public default int countArcs(N node, String label, Arc.Direction dir) {
+		return countArcs(node, label, dir, null);
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Chooses which visible nodes a {@link Prefetcher} warms up, i.e. which nodes
+ * the user is likely to expand next.
+ */
+@FunctionalInterface
+public interface PrefetchPolicy extends Serializable {
+
+	/**
+	 * @param candidates collapsed nodes not warmed up yet, in the order they became visible
+	 * @param model the displayed graph
+	 * @param degree number of arcs of a node in the repository, 0 if the repository can't count them
+	 * @return nodes to warm up, most likely expansion first
+	 */
+	public List<NodeProxy> select(List<NodeProxy> candidates, LayoutEngineModel model, ToIntFunction<NodeProxy> degree);
+
+	/**
+	 * The candidates are newly visible nodes, mostly with a single visible arc,
+	 * so they are ranked by their arcs in the repository.
+	 *
+	 * @param k maximal number of nodes to warm up
+	 * @return policy choosing the nodes with the most arcs, the most recent on ties
+	 */
+	public static PrefetchPolicy topDegree(final int k) {
+		return (candidates, model, degree) -> {
+			final Map<NodeProxy, Integer> degrees = new HashMap<NodeProxy, Integer>();
+			List<NodeProxy> sorted = new ArrayList<NodeProxy>(candidates);
+			for (NodeProxy node : sorted) {
+				degrees.put(node, degree.applyAsInt(node));
+			}
+			Collections.reverse(sorted);
+			// stable sort, the reversal keeps the most recent first on ties
+			Collections.sort(sorted, (a, b) -> Integer.compare(degrees.get(b), degrees.get(a)));
+			return sorted.subList(0, Math.min(k, sorted.size()));
+		};
+	}
+
+	/**
+	 * @param k maximal number of nodes to warm up
+	 * @return policy choosing the nodes which became visible last
+	 */
+	public static PrefetchPolicy mostRecent(final int k) {
+		return (candidates, model, degree) -> {
+			List<NodeProxy> recent = new ArrayList<NodeProxy>(
+					candidates.subList(Math.max(0, candidates.size() - k), candidates.size()));
+			Collections.reverse(recent);
+			return recent;
+		};
+	}
+}
@@ -0,0 +1,211 @@
+package com.vaadin.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.graph.shared.NodeProxy;
+import com.vaadin.graph.shared.NodeProxy.NodeKind;
+import com.vaadin.graph.shared.NodeProxy.NodeState;
+
+/**
+ * Warms up the neighborhoods of visible nodes in the background, so that
+ * expanding one of them is answered from a {@link CachingGraphRepository}
+ * instead of the backend. The nodes are chosen by a {@link PrefetchPolicy}
+ * whenever the displayed graph changes, at most a given number of them are
+ * fetched at the same time, and fetches of nodes which disappear (e.g. on
+ * collapse) are cancelled.
+ * <p>
+ * One prefetcher belongs to one {@link GraphExplorer}, see
+ * {@link GraphExplorer#setPrefetcher(Prefetcher)}. Pass a shared caching
+ * repository to share the warmed data between sessions.
+ */
+public class Prefetcher<N extends Node, A extends Arc> {
+
+	private final CachingGraphRepository<N, A> repository;
+	private final ExecutorService executor;
+	private final int maxConcurrent;
+	private final PrefetchPolicy policy;
+
+	private final Set<String> candidates = new LinkedHashSet<String>();
+	private final Set<String> warmed = new HashSet<String>();
+	private final Deque<String> queue = new ArrayDeque<String>();
+	private final Map<String, Future<?>> running = new HashMap<String, Future<?>>();
+	private GraphController<N, A> controller;
+
+	/**
+	 * Warms up the three visible nodes with the most arcs in the repository, two at a time.
+	 *
+	 * @param repository cache to warm up, also used by the explorer to expand nodes
+	 * @param executor executor running the fetches
+	 */
+	public Prefetcher(CachingGraphRepository<N, A> repository, ExecutorService executor) {
+		this(repository, executor, 2, PrefetchPolicy.topDegree(3));
+	}
+
+	/**
+	 * @param repository cache to warm up, also used by the explorer to expand nodes
+	 * @param executor executor running the fetches
+	 * @param maxConcurrent maximal number of fetches running at the same time
+	 * @param policy chooses the nodes to warm up
+	 */
+	public Prefetcher(CachingGraphRepository<N, A> repository, ExecutorService executor, int maxConcurrent,
+			PrefetchPolicy policy) {
+		this.repository = repository;
+		this.executor = executor;
+		this.maxConcurrent = maxConcurrent;
+		this.policy = policy;
+	}
+
+	public CachingGraphRepository<N, A> getRepository() {
+		return repository;
+	}
+
+	public PrefetchPolicy getPolicy() {
+		return policy;
+	}
+
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * Chooses the nodes to warm up after the displayed graph has changed and
+	 * cancels the fetches of nodes which are not displayed any more. Call with
+	 * the session locked.
+	 *
+	 * @param controller controller loading the neighbors, it knows which requests an expand makes
+	 * @param model the displayed graph
+	 */
+	public synchronized void update(GraphController<N, A> controller, LayoutEngineModel model) {
+		this.controller = controller;
+		for (NodeProxy node : model.getNodes()) {
+			if (NodeState.COLLAPSED.equals(node.getState()) && !NodeKind.GROUP.equals(node.getKind())
+					&& !warmed.contains(node.getId())) {
+				candidates.add(node.getId());
+			}
+		}
+		List<NodeProxy> available = new ArrayList<NodeProxy>();
+		for (Iterator<String> i = candidates.iterator(); i.hasNext();) {
+			NodeProxy node = model.getNode(i.next());
+			if (node == null || !NodeState.COLLAPSED.equals(node.getState())) {
+				i.remove();
+			} else {
+				available.add(node);
+			}
+		}
+		warmed.retainAll(ids(model));
+		for (Iterator<Map.Entry<String, Future<?>>> i = running.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<String, Future<?>> fetch = i.next();
+			if (model.getNode(fetch.getKey()) == null) {
+				fetch.getValue().cancel(true);
+				i.remove();
+			}
+		}
+
+		queue.clear();
+		for (NodeProxy node : policy.select(available, model, this::degree)) {
+			if (!running.containsKey(node.getId())) {
+				queue.add(node.getId());
+			}
+		}
+		pump();
+	}
+
+	/**
+	 * Cancels all fetches, e.g. when the explorer is detached.
+	 */
+	public synchronized void cancel() {
+		queue.clear();
+		for (Future<?> fetch : running.values()) {
+			fetch.cancel(true);
+		}
+		running.clear();
+	}
+
+	/**
+	 * @return number of fetches running at the moment
+	 */
+	public synchronized int getRunning() {
+		return running.size();
+	}
+
+	private void pump() {
+		while (running.size() < maxConcurrent && !queue.isEmpty()) {
+			final String id = queue.poll();
+			candidates.remove(id);
+			final GraphController<N, A> loader = controller;
+			FutureTask<Void> fetch = new FutureTask<Void>(() -> {
+				try {
+					loader.prefetchNeighbors(id, repository);
+				} catch (RuntimeException e) {
+					Logger.getLogger(Prefetcher.class.getName()).log(Level.FINE, "Prefetching " + id + " failed", e);
+				} finally {
+					finished(id);
+				}
+			}, null);
+			// register before executing, an executor running the task in the calling thread finishes it right away
+			running.put(id, fetch);
+			try {
+				executor.execute(fetch);
+			} catch (RejectedExecutionException e) {
+				// e.g. the executor has been shut down, try again on the next update
+				Logger.getLogger(Prefetcher.class.getName()).log(Level.FINE, "Prefetching " + id + " rejected", e);
+				running.remove(id);
+				candidates.add(id);
+				queue.clear();
+			}
+		}
+	}
+
+	private synchronized void finished(String id) {
+		// a cancelled fetch has already been removed
+		if (running.remove(id) != null) {
+			warmed.add(id);
+			pump();
+		}
+	}
+
+	/**
+	 * Counts the arcs of a node in the repository, once per node as the counts
+	 * are cached. A cache of a repository which can't count would fetch the
+	 * arcs for that, with the session locked, so the degree is 0 then.
+	 */
+	private int degree(NodeProxy proxy) {
+		if (!repository.canCount()) {
+			return 0;
+		}
+		N node = repository.getNodeById(proxy.getId());
+		if (node == null) {
+			return 0;
+		}
+		int degree = 0;
+		for (Arc.Direction dir : Arc.Direction.values()) {
+			for (int count : repository.countArcs(node, dir).values()) {
+				degree += count;
+			}
+		}
+		return degree;
+	}
+
+	private static Set<String> ids(LayoutEngineModel model) {
+		Set<String> ids = new HashSet<String>();
+		for (NodeProxy node : model.getNodes()) {
+			ids.add(node.getId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,249 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.vaadin.graph.shared.NodeProxy;
+import com.vaadin.graph.shared.NodeProxy.NodeState;
+
+/**
+ * Keeps track of which displayed nodes can still be reached from the roots
+ * (the home node and the pinned nodes) by expanding, i.e. through paths whose
+ * inner nodes are all expanded, and removes the nodes which can't.
+ * <p>
+ * Every reachable node has a rank: roots have rank 0, any other node has an
+ * expanded neighbor of lower rank, its support. Adding nodes keeps the ranks
+ * valid. When a node is collapsed or removed, only the nodes which may have
+ * lost their support are examined: the ones without support are collected,
+ * those which can be supported again from the rest of the graph get new ranks,
+ * and the remaining ones are removed. The work is proportional to the part of
+ * the graph which has lost its support, not to the size of the graph.
+ */
+class ReachabilityTracker implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, Integer> ranks = new HashMap<String, Integer>();
+	private final Set<String> roots = new LinkedHashSet<String>();
+
+	Set<String> getRoots() {
+		return Collections.unmodifiableSet(roots);
+	}
+
+	void addRoot(String nodeId) {
+		roots.add(nodeId);
+		ranks.put(nodeId, 0);
+	}
+
+	/**
+	 * Stops treating a node as a root. Call {@link #prune} with the node to
+	 * remove what is not reachable any more.
+	 */
+	void removeRoot(String nodeId) {
+		if (roots.remove(nodeId)) {
+			ranks.remove(nodeId);
+		}
+	}
+
+	boolean isRoot(String nodeId) {
+		return roots.contains(nodeId);
+	}
+
+	/**
+	 * Ranks all nodes of the model again, by breadth first search from the
+	 * roots. Unreachable nodes are left in the model without rank and are
+	 * removed when they are examined by {@link #prune}.
+	 */
+	void rebuild(LayoutEngineModel model) {
+		ranks.clear();
+		Deque<NodeProxy> queue = new ArrayDeque<NodeProxy>();
+		for (String id : roots) {
+			ranks.put(id, 0);
+			NodeProxy root = model.getNode(id);
+			if (root != null) {
+				queue.add(root);
+			}
+		}
+		while (!queue.isEmpty()) {
+			NodeProxy node = queue.poll();
+			if (!NodeState.EXPANDED.equals(node.getState())) {
+				continue;
+			}
+			int rank = ranks.get(node.getId()) + 1;
+			for (NodeProxy neighbor : model.getNeighbors(node)) {
+				if (!ranks.containsKey(neighbor.getId())) {
+					ranks.put(neighbor.getId(), rank);
+					queue.add(neighbor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ranks nodes which have been added to the model, e.g. the neighbors of an
+	 * expanded node. Nodes which were already there may get a lower rank.
+	 */
+	void added(LayoutEngineModel model, Collection<NodeProxy> nodes) {
+		for (NodeProxy node : nodes) {
+			if (roots.contains(node.getId())) {
+				continue;
+			}
+			Integer support = supportRank(model, node, Collections.<String> emptySet());
+			Integer rank = ranks.get(node.getId());
+			// lowering a rank never takes away support, raising it could
+			if (support != null && (rank == null || support + 1 < rank)) {
+				ranks.put(node.getId(), support + 1);
+			}
+		}
+	}
+
+	/**
+	 * Forgets a node removed from the model. Call {@link #prune} with its
+	 * neighbors if it was expanded.
+	 */
+	void removed(NodeProxy node) {
+		if (!roots.contains(node.getId())) {
+			ranks.remove(node.getId());
+		}
+	}
+
+	/**
+	 * Removes the nodes which are no longer reachable after a change.
+	 *
+	 * @param model the displayed graph
+	 * @param seeds nodes which may have lost their support, e.g. the neighbors of a collapsed node
+	 * @return removed nodes
+	 */
+	List<NodeProxy> prune(LayoutEngineModel model, Collection<NodeProxy> seeds) {
+		Map<String, Integer> supported = new HashMap<String, Integer>();
+		List<NodeProxy> removed = unreachable(model, seeds, null, supported);
+		ranks.putAll(supported);
+		for (NodeProxy node : removed) {
+			model.removeNode(node);
+			ranks.remove(node.getId());
+		}
+		return removed;
+	}
+
+	/**
+	 * Tells what collapsing an expanded node would remove, without changing
+	 * anything.
+	 *
+	 * @return nodes which would no longer be reachable, including the collapsed leaves of the node
+	 */
+	List<NodeProxy> removedByCollapse(LayoutEngineModel model, NodeProxy node) {
+		return unreachable(model, model.getNeighbors(node), node.getId(), new HashMap<String, Integer>());
+	}
+
+	/**
+	 * @param collapsed node to treat as collapsed, null for none
+	 * @param supported receives the new ranks of the nodes which have been supported again
+	 * @return nodes which can't be supported any more
+	 */
+	private List<NodeProxy> unreachable(LayoutEngineModel model, Collection<NodeProxy> seeds, String collapsed,
+			Map<String, Integer> supported) {
+		// collect the nodes without support, and the ones they supported
+		Set<NodeProxy> unsupported = new LinkedHashSet<NodeProxy>();
+		Set<String> unsupportedIds = new HashSet<String>();
+		Deque<NodeProxy> queue = new ArrayDeque<NodeProxy>(seeds);
+		while (!queue.isEmpty()) {
+			NodeProxy node = model.getNode(queue.poll().getId());
+			if (node == null || roots.contains(node.getId()) || unsupportedIds.contains(node.getId())) {
+				continue;
+			}
+			Integer rank = ranks.get(node.getId());
+			Integer support = supportRank(model, node, unsupportedIds, collapsed);
+			if (rank != null && support != null && support < rank) {
+				continue;
+			}
+			unsupported.add(node);
+			unsupportedIds.add(node.getId());
+			if (isExpanded(node, collapsed)) {
+				for (NodeProxy neighbor : model.getNeighbors(node)) {
+					Integer neighborRank = ranks.get(neighbor.getId());
+					if (rank == null || neighborRank == null || neighborRank > rank) {
+						queue.add(neighbor);
+					}
+				}
+			}
+		}
+		if (unsupported.isEmpty()) {
+			return new ArrayList<NodeProxy>(0);
+		}
+
+		// support them again from the boundary, lowest rank first
+		PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+		for (NodeProxy node : unsupported) {
+			Integer support = supportRank(model, node, unsupportedIds, collapsed);
+			if (support != null) {
+				candidates.add(new Candidate(node, support + 1));
+			}
+		}
+		while (!candidates.isEmpty()) {
+			Candidate candidate = candidates.poll();
+			if (!unsupportedIds.remove(candidate.node.getId())) {
+				continue;
+			}
+			unsupported.remove(candidate.node);
+			supported.put(candidate.node.getId(), candidate.rank);
+			if (isExpanded(candidate.node, collapsed)) {
+				for (NodeProxy neighbor : model.getNeighbors(candidate.node)) {
+					if (unsupportedIds.contains(neighbor.getId())) {
+						candidates.add(new Candidate(neighbor, candidate.rank + 1));
+					}
+				}
+			}
+		}
+		return new ArrayList<NodeProxy>(unsupported);
+	}
+
+	/**
+	 * @return lowest rank of the expanded neighbors which can support the node, null if there is none
+	 */
+	private Integer supportRank(LayoutEngineModel model, NodeProxy node, Set<String> excluded) {
+		return supportRank(model, node, excluded, null);
+	}
+
+	private Integer supportRank(LayoutEngineModel model, NodeProxy node, Set<String> excluded, String collapsed) {
+		Integer best = null;
+		for (NodeProxy neighbor : model.getNeighbors(node)) {
+			if (!isExpanded(neighbor, collapsed) || excluded.contains(neighbor.getId())) {
+				continue;
+			}
+			Integer rank = ranks.get(neighbor.getId());
+			if (rank != null && (best == null || rank < best)) {
+				best = rank;
+			}
+		}
+		return best;
+	}
+
+	private static boolean isExpanded(NodeProxy node, String collapsed) {
+		return NodeState.EXPANDED.equals(node.getState()) && !node.getId().equals(collapsed);
+	}
+
+	private static final class Candidate implements Comparable<Candidate> {
+		private final NodeProxy node;
+		private final int rank;
+
+		Candidate(NodeProxy node, int rank) {
+			this.node = node;
+			this.rank = rank;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			return Integer.compare(rank, other.rank);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.vaadin.graph;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Bounded cache of rendered node and arc content (HTML, icon URL, CSS style),
+ * so that loading a node or arc again reuses the strings rendered before.
+ * <p>
+ * Renderings are kept per rendering controller class and element ID, one per
+ * element. A rendering is reused if the label, the icon and the properties of
+ * the element are still the same: the hash of the properties is compared
+ * first, then the properties themselves, without copying them. An element
+ * which has changed is rendered again and replaces its old rendering. A
+ * {@link GraphController} has no cache by default; the {@link #getShared()
+ * shared} cache may be set if the rendering of the controller only depends on
+ * the element itself (not on e.g. the locale of the session).
+ */
+public class RenderCache {
+
+	private static final RenderCache SHARED = new RenderCache(10000);
+
+	private final Cache<Key, Entry> cache;
+
+	/**
+	 * @param maximumSize maximal number of cached renderings
+	 */
+	public RenderCache(long maximumSize) {
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+
+	/**
+	 * @return cache shared by the whole JVM, holding up to 10000 renderings
+	 */
+	public static RenderCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @param renderer class rendering the element, different classes render differently
+	 * @param element node or arc
+	 * @param render renders the element if it is not cached
+	 * @return cached or new rendering of the element
+	 */
+	public Rendering get(Class<?> renderer, GraphElement element, Supplier<Rendering> render) {
+		Key key = new Key(renderer, element);
+		Map<String, Object> properties = element.getProperties();
+		int propertiesHash = Objects.hashCode(properties);
+		Entry entry = cache.getIfPresent(key);
+		if (entry != null && entry.renders(element, properties, propertiesHash)) {
+			return entry.rendering;
+		}
+		Rendering rendering = render.get();
+		cache.put(key, new Entry(element, properties, propertiesHash, rendering));
+		return rendering;
+	}
+
+	/**
+	 * @return hit, miss and eviction counts since the cache has been created, a
+	 *         rendering found for a changed element counts as a hit
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Rendered content of a node or arc.
+	 */
+	public static final class Rendering {
+		private final String content;
+		private final String iconUrl;
+		private final String style;
+
+		/**
+		 * @param content HTML content of a node or label of an arc
+		 * @param iconUrl icon URL of a node, null for arcs
+		 * @param style CSS style
+		 */
+		public Rendering(String content, String iconUrl, String style) {
+			this.content = content;
+			this.iconUrl = iconUrl;
+			this.style = style;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		public String getIconUrl() {
+			return iconUrl;
+		}
+
+		public String getStyle() {
+			return style;
+		}
+	}
+
+	/**
+	 * Cache key: the renderer and the element.
+	 */
+	private static final class Key {
+		// the class name, a class object would keep its class loader alive
+		private final String renderer;
+		private final boolean node;
+		private final String id;
+
+		Key(Class<?> renderer, GraphElement element) {
+			this.renderer = renderer.getName();
+			this.node = element instanceof Node;
+			this.id = element.getId();
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * renderer.hashCode() + Boolean.hashCode(node)) + Objects.hashCode(id);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return renderer.equals(other.renderer) && node == other.node && Objects.equals(id, other.id);
+		}
+	}
+
+	/**
+	 * A rendering and the content of the element it has been rendered from.
+	 */
+	private static final class Entry {
+		private final String label;
+		private final Object icon;
+		// the element's own map, compared by hash first in case it is changed in place
+		private final Map<String, Object> properties;
+		private final int propertiesHash;
+		private final Rendering rendering;
+
+		Entry(GraphElement element, Map<String, Object> properties, int propertiesHash, Rendering rendering) {
+			this.label = element.getLabel();
+			this.icon = icon(element);
+			this.properties = properties;
+			this.propertiesHash = propertiesHash;
+			this.rendering = rendering;
+		}
+
+		boolean renders(GraphElement element, Map<String, Object> properties, int propertiesHash) {
+			return this.propertiesHash == propertiesHash && Objects.equals(label, element.getLabel())
+					&& Objects.equals(icon, icon(element))
+					&& (this.properties == properties || Objects.equals(this.properties, properties));
+		}
+
+		private static Object icon(GraphElement element) {
+			return element instanceof Node ? ((Node) element).getIcon() : null;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.vaadin.graph;
+
+/**
+ * A layout engine arranging the graph around a root node. {@link GraphExplorer}
+ * uses the home node of its repository as root unless a root has been set.
+ */
+public interface RootedLayoutEngine extends LayoutEngine {
+
+	public String getRootId();
+
+	/**
+	 * @param rootId ID of the node to arrange the graph around, null to let the engine choose
+	 */
+	public void setRootId(String rootId);
+
+}
@@ -0,0 +1,215 @@
+package com.vaadin.graph;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.server.SerializableFunction;
+
+/**
+ * Substring search over the labels of a fixed set of items, used to filter the
+ * members of a group node as the user types.
+ * <p>
+ * Labels are normalized once (lower case, without white space) and indexed by
+ * their trigrams. A filter of three or more characters only checks the labels
+ * containing all of its trigrams; a filter extending the previous one (the
+ * user typed another character) only checks the previous matches. Matches are
+ * ranked: exact matches first, then by the position of the match, then by
+ * label length, then in the original order.
+ */
+public class SearchIndex<T> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int[] NONE = new int[0];
+
+	private final List<T> items;
+	private final String[] keys;
+	private final Map<Long, int[]> trigrams = new HashMap<Long, int[]>();
+
+	private transient String lastFilter;
+	private transient int[] lastMatches;
+	private transient List<T> lastResult;
+
+	/**
+	 * @param items items to search
+	 * @param label label of an item
+	 */
+	public SearchIndex(Collection<T> items, SerializableFunction<T, String> label) {
+		this.items = new ArrayList<T>(items);
+		int n = this.items.size();
+		keys = new String[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = normalize(label.apply(this.items.get(i)));
+		}
+
+		// posting lists in two passes to allocate them at their exact size
+		Map<Long, int[]> counts = new HashMap<Long, int[]>();
+		for (int i = 0; i < n; i++) {
+			String key = keys[i];
+			for (int c = 0; c + 3 <= key.length(); c++) {
+				int[] count = counts.get(trigram(key, c));
+				if (count == null) {
+					counts.put(trigram(key, c), count = new int[] { 0, -1 });
+				}
+				if (count[1] != i) {
+					count[0]++;
+					count[1] = i;
+				}
+			}
+		}
+		for (Map.Entry<Long, int[]> count : counts.entrySet()) {
+			trigrams.put(count.getKey(), new int[count.getValue()[0]]);
+			// from now on the count is the number of filled entries
+			count.getValue()[0] = 0;
+		}
+		for (int i = 0; i < n; i++) {
+			String key = keys[i];
+			for (int c = 0; c + 3 <= key.length(); c++) {
+				Long t = trigram(key, c);
+				int[] count = counts.get(t);
+				int[] postings = trigrams.get(t);
+				if (count[0] == 0 || postings[count[0] - 1] != i) {
+					postings[count[0]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of indexed items
+	 */
+	public int size() {
+		return items.size();
+	}
+
+	/**
+	 * @param filter text typed by the user, null or empty for all items
+	 * @return ranked items whose normalized label contains the normalized filter
+	 */
+	public List<T> search(String filter) {
+		String query = normalize(filter);
+		if (query.isEmpty()) {
+			return Collections.unmodifiableList(items);
+		}
+		if (query.equals(lastFilter)) {
+			return lastResult;
+		}
+		int[] candidates;
+		if (lastFilter != null && query.contains(lastFilter)) {
+			candidates = lastMatches;
+		} else if (query.length() >= 3) {
+			candidates = candidates(query);
+		} else {
+			candidates = null;
+		}
+
+		int count = candidates == null ? keys.length : candidates.length;
+		int[] matches = new int[count];
+		int m = 0;
+		for (int c = 0; c < count; c++) {
+			int i = candidates == null ? c : candidates[c];
+			if (keys[i].contains(query)) {
+				matches[m++] = i;
+			}
+		}
+		matches = Arrays.copyOf(matches, m);
+
+		lastFilter = query;
+		lastMatches = matches;
+		lastResult = rank(query, matches);
+		return lastResult;
+	}
+
+	/**
+	 * Normalizes a label or filter: lower case, white space removed.
+	 */
+	public static String normalize(String text) {
+		if (text == null) {
+			return "";
+		}
+		StringBuilder normalized = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				normalized.append(Character.toLowerCase(c));
+			}
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * @return indices of the keys containing all trigrams of the query, ascending
+	 */
+	private int[] candidates(String query) {
+		List<int[]> lists = new ArrayList<int[]>();
+		for (int c = 0; c + 3 <= query.length(); c++) {
+			int[] postings = trigrams.get(trigram(query, c));
+			if (postings == null) {
+				return NONE;
+			}
+			lists.add(postings);
+		}
+		// intersect starting with the shortest list
+		Collections.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+		int[] result = lists.get(0);
+		for (int l = 1; l < lists.size() && result.length > 0; l++) {
+			result = intersect(result, lists.get(l));
+		}
+		return result;
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int n = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length;) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	private List<T> rank(String query, int[] matches) {
+		// rank, length and index packed into one long to sort primitives
+		long[] order = new long[matches.length];
+		for (int m = 0; m < matches.length; m++) {
+			int i = matches[m];
+			String key = keys[i];
+			long rank = key.length() == query.length() ? 0 : Math.min(key.indexOf(query) + 1, 0x7FF);
+			long length = Math.min(key.length(), 0xFFFFF);
+			order[m] = rank << 52 | length << 32 | i;
+		}
+		Arrays.sort(order);
+		final int[] ranked = new int[order.length];
+		for (int m = 0; m < order.length; m++) {
+			ranked[m] = (int) order[m];
+		}
+		return new AbstractList<T>() {
+			@Override
+			public T get(int index) {
+				return items.get(ranked[index]);
+			}
+
+			@Override
+			public int size() {
+				return ranked.length;
+			}
+		};
+	}
+
+	private static Long trigram(String key, int offset) {
+		return (long) key.charAt(offset) << 32 | (long) key.charAt(offset + 1) << 16 | key.charAt(offset + 2);
+	}
+}
@@ -0,0 +1,18 @@
+package com.vaadin.graph;
+
+/**
+ * A layout engine which draws random numbers (e.g. for the initial position
+ * of new nodes) and can be made deterministic by a seed: with a seed, laying
+ * out the same model on the same canvas gives the same positions.
+ */
+public interface SeededLayoutEngine extends LayoutEngine {
+
+	public Long getSeed();
+
+	/**
+	 * @param seed seed of the random numbers drawn by each layout calculation,
+	 *        null for a different sequence every time
+	 */
+	public void setSeed(Long seed);
+
+}
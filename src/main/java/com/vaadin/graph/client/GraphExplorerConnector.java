@@ -1,5 +1,8 @@
 package com.vaadin.graph.client;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import com.google.gwt.user.client.Random;
 import com.vaadin.client.communication.RpcProxy;
 import com.vaadin.client.communication.StateChangeEvent;
@@ -9,6 +12,7 @@ import com.vaadin.graph.GraphExplorer;
 import com.vaadin.graph.shared.ArcProxy;
 import com.vaadin.graph.shared.GraphExplorerServerRpc;
 import com.vaadin.graph.shared.GraphExplorerState;
+import com.vaadin.graph.shared.NodePosition;
 import com.vaadin.graph.shared.NodeProxy;
 import com.vaadin.shared.ui.Connect;
 
@@ -24,6 +28,7 @@ public class GraphExplorerConnector extends AbstractComponentConnector implement
 
     private final GraphProxy graph = new GraphProxy();
     private NodePresenter current;
+    private int version = -1;
 
     @Override
     public GraphExplorerState getState() {
@@ -53,14 +58,18 @@ public class GraphExplorerConnector extends AbstractComponentConnector implement
     public void onStateChanged(StateChangeEvent stateChangeEvent) {
         super.onStateChanged(stateChangeEvent);
 
-    	reloadNodes();
-    	reloadArcs();
-    	
-    	if (getState().removedId != null) {
-    		graph.removeNode(getState().removedId);
-    	}
-    	
-        for (NodePresenter node : graph.getNodes()) {
+        if (getState().version == version) {
+            return;
+        }
+        version = getState().version;
+
+        Set<NodePresenter> touched = new HashSet<NodePresenter>();
+        removeArcs();
+        removeNodes();
+        reloadNodes(touched);
+        reloadArcs(touched);
+
+        for (NodePresenter node : touched) {
             node.onUpdateInModel();
         }
     }
@@ -80,39 +89,87 @@ public class GraphExplorerConnector extends AbstractComponentConnector implement
     	}
     }
 
-    private void reloadNodes() {
-        if (getState().nodes == null) {
+    private void removeArcs() {
+        if (getState().removedArcs == null) {
+            return;
+        }
+        for (String id : getState().removedArcs) {
+            graph.removeArc(id);
+        }
+    }
+
+    private void removeNodes() {
+        if (getState().removedNodes == null) {
             return;
         }
-        for (NodeProxy node : getState().nodes) {
-            NodePresenter presenter = graph.getNode(node.getId());
-            if (presenter == null) {
-                presenter = new NodePresenter(this, node);
-                if (current == null) {
-                	presenter.setX(Random.nextInt(getWidget().getOffsetWidth()));
-                	presenter.setY(Random.nextInt(getWidget().getOffsetHeight()));
+        for (String id : getState().removedNodes) {
+            graph.removeNode(id);
+        }
+    }
+
+    private void reloadNodes(Set<NodePresenter> touched) {
+        if (getState().addedNodes != null) {
+            for (NodeProxy node : getState().addedNodes) {
+                NodePresenter presenter = graph.getNode(node.getId());
+                if (presenter == null) {
+                    presenter = new NodePresenter(this, node);
+                    if (current == null) {
+                        presenter.setX(Random.nextInt(getWidget().getOffsetWidth()));
+                        presenter.setY(Random.nextInt(getWidget().getOffsetHeight()));
+                    } else {
+                        presenter.setX(current.getX());
+                        presenter.setY(current.getY());
+                    }
+                    graph.addNode(presenter);
                 } else {
-                	presenter.setX(current.getX());
-                	presenter.setY(current.getY());
+                    presenter.setModel(node);
+                }
+                if (node.getX() >= 0 && node.getY() >= 0) {
+                    // otherwise the position is still being computed
+                    presenter.move(node.getX(), node.getY());
+                }
+                touched.add(presenter);
+            }
+        }
+        if (getState().updatedNodes != null) {
+            for (NodeProxy node : getState().updatedNodes) {
+                NodePresenter presenter = graph.getNode(node.getId());
+                if (presenter != null) {
+                    presenter.setModel(node);
+                    if (node.getX() >= 0 && node.getY() >= 0) {
+                        presenter.move(node.getX(), node.getY());
+                    }
+                    touched.add(presenter);
+                }
+            }
+        }
+        if (getState().movedNodes != null) {
+            for (NodePosition position : getState().movedNodes) {
+                NodePresenter presenter = graph.getNode(position.getId());
+                if (presenter != null) {
+                    presenter.getModel().setX(position.getX());
+                    presenter.getModel().setY(position.getY());
+                    presenter.move(position.getX(), position.getY());
+                    touched.add(presenter);
                 }
-                graph.addNode(presenter);
-            } else {
-            	presenter.setModel(node);
             }
-            presenter.move(node.getX(), node.getY());
         }
     }
 
-    private void reloadArcs() {
-        if (getState().arcs == null) {
+    private void reloadArcs(Set<NodePresenter> touched) {
+        if (getState().addedArcs == null) {
             return;
         }
-        for (ArcProxy arc : getState().arcs) {
+        for (ArcProxy arc : getState().addedArcs) {
             ArcPresenter presenter = graph.getArc(arc.getId());
-            if (presenter == null) {
-				graph.addArc(new ArcPresenter(this, arc));
-				graph.getNode(arc.getFromNode()).addOutArc(arc.getId());
-				graph.getNode(arc.getToNode()).addInArc(arc.getId());
+            NodePresenter from = graph.getNode(arc.getFromNode());
+            NodePresenter to = graph.getNode(arc.getToNode());
+            if (presenter == null && from != null && to != null) {
+                graph.addArc(new ArcPresenter(this, arc));
+                from.addOutArc(arc.getId());
+                to.addInArc(arc.getId());
+                touched.add(from);
+                touched.add(to);
             }
         }
     }
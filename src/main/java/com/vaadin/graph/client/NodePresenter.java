@@ -228,6 +228,9 @@ class NodePresenter implements Controller, MouseDownHandler, MouseMoveHandler, M
 		if (model.getStyle() != null) {
 			element.addClassName(model.getStyle());
 		}
+		if (model.isPending()) {
+			element.addClassName("pending");
+		}
 		if (isMouseDown()) {
 			element.addClassName("down");
 		}
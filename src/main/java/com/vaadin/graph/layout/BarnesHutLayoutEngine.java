@@ -0,0 +1,175 @@
+package com.vaadin.graph.layout;
+
+import java.util.Collection;
+import java.util.Random;
+
+import com.vaadin.graph.BudgetedLayoutEngine;
+import com.vaadin.graph.LayoutBudget;
+import com.vaadin.graph.LayoutEngine;
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.LayoutStats;
+import com.vaadin.graph.SeededLayoutEngine;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Force directed layout engine approximating the repulsion between nodes with
+ * a Barnes-Hut quadtree. A group of nodes whose cell is seen from a node under
+ * an angle smaller than theta (cell size / distance) is treated as a single
+ * body at its center of mass, which reduces the cost of an iteration from
+ * O(n&sup2;) to O(n log n). The simulation works on a {@link LayoutGraph} and
+ * reuses its quadtree, iterations do not allocate.
+ */
+public class BarnesHutLayoutEngine implements BudgetedLayoutEngine, SeededLayoutEngine {
+	private static final long serialVersionUID = 1L;
+
+	private static final double MIN_TEMPERATURE = 0.5;
+
+	private final LayoutEngineModel model;
+	private transient QuadTree tree;
+
+	private double theta = 0.8;
+	private int iterations = 200;
+	private LayoutBudget budget = LayoutBudget.UNLIMITED;
+	private LayoutStats lastStats;
+	private Long seed;
+
+	public BarnesHutLayoutEngine() {
+		this(new JungLayoutEngineModel());
+	}
+
+	public BarnesHutLayoutEngine(LayoutEngineModel model) {
+		super();
+		this.model = model;
+	}
+
+	@Override
+	public LayoutEngineModel getModel() {
+		return model;
+	}
+
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * @param theta opening criterion, 0 computes exact repulsion, larger values
+	 *        are faster and less accurate (typically 0.5 - 1.2)
+	 */
+	public void setTheta(double theta) {
+		this.theta = theta;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @param iterations number of iterations of the simulation
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	@Override
+	public LayoutBudget getBudget() {
+		return budget;
+	}
+
+	@Override
+	public void setBudget(LayoutBudget budget) {
+		this.budget = budget == null ? LayoutBudget.UNLIMITED : budget;
+	}
+
+	@Override
+	public LayoutStats getLastStats() {
+		return lastStats;
+	}
+
+	@Override
+	public Long getSeed() {
+		return seed;
+	}
+
+	@Override
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public LayoutEngine snapshot() {
+		BarnesHutLayoutEngine copy = new BarnesHutLayoutEngine(JungLayoutEngineModel.copyOf(model));
+		copy.setTheta(theta);
+		copy.setIterations(iterations);
+		copy.setBudget(budget);
+		copy.setSeed(seed);
+		return copy;
+	}
+
+	@Override
+	public void layout(int width, int height, Collection<NodeProxy> lockedNodes) {
+		LayoutRun run = new LayoutRun(budget);
+		LayoutGraph graph = LayoutGraph.of(model, lockedNodes);
+		graph.placeUnplaced(width, height, seed == null ? new Random() : new Random(seed));
+		int n = graph.size();
+		double[] x = graph.getX();
+		double[] y = graph.getY();
+		boolean[] locked = graph.getLocked();
+		int[] offsets = graph.getOffsets();
+		int[] adjacent = graph.getAdjacent();
+
+		if (n > 0) {
+			if (tree == null) {
+				tree = new QuadTree(n);
+			}
+			double k = Math.sqrt((double) width * height / n);
+			double temperature = Math.max(width, height) / 10.0;
+			double cooling = Math.pow(MIN_TEMPERATURE / Math.max(temperature, MIN_TEMPERATURE),
+					1.0 / Math.max(iterations, 1));
+			double[] fx = new double[n];
+			double[] fy = new double[n];
+			for (int iteration = 0; iteration < iterations && run.mayContinue(); iteration++) {
+				tree.build(x, y, n);
+				for (int i = 0; i < n; i++) {
+					fx[i] = 0;
+					fy[i] = 0;
+					if (locked[i]) {
+						continue;
+					}
+					tree.repulse(i, fx, fy, k * k, theta);
+					for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+						int j = adjacent[a];
+						double dx = x[i] - x[j];
+						double dy = y[i] - y[j];
+						double d = Math.sqrt(dx * dx + dy * dy);
+						fx[i] -= dx * d / k;
+						fy[i] -= dy * d / k;
+					}
+				}
+				double squared = 0;
+				double total = 0;
+				for (int i = 0; i < n; i++) {
+					double d = Math.sqrt(fx[i] * fx[i] + fy[i] * fy[i]);
+					if (locked[i] || d == 0) {
+						continue;
+					}
+					double step = Math.min(d, temperature);
+					double nx = clamp(x[i] + fx[i] / d * step, width);
+					double ny = clamp(y[i] + fy[i] / d * step, height);
+					double moved = (nx - x[i]) * (nx - x[i]) + (ny - y[i]) * (ny - y[i]);
+					squared += moved;
+					total += Math.sqrt(moved);
+					x[i] = nx;
+					y[i] = ny;
+				}
+				temperature *= cooling;
+				run.iterationDone(squared, total, n);
+			}
+		}
+		lastStats = run.finish();
+		graph.writeBack();
+	}
+
+	private static double clamp(double value, int max) {
+		return Math.min(Math.max(0, value), max);
+	}
+}
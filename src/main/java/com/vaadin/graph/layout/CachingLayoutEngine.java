@@ -0,0 +1,118 @@
+package com.vaadin.graph.layout;
+
+import java.util.Collection;
+
+import com.vaadin.graph.BudgetedLayoutEngine;
+import com.vaadin.graph.LayoutEngine;
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.SeededLayoutEngine;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Layout engine decorator looking up layouts in a {@link LayoutCache} before
+ * calculating them. On a hit the cached positions are set and the wrapped
+ * engine is not run at all.
+ * <p>
+ * Sessions only share results if the wrapped engine is deterministic, so give
+ * a {@link SeededLayoutEngine} a seed. The seed and the budget of the engine
+ * are part of the cache key. Layouts limited by time depend on the speed of
+ * the machine and are neither looked up nor cached. Engines keeping state between layouts (like
+ * {@link IncrementalFRLayoutEngine}) should not be wrapped, their state is not
+ * updated by a hit.
+ */
+public class CachingLayoutEngine implements LayoutEngine {
+	private static final long serialVersionUID = 1L;
+
+	private final LayoutEngine engine;
+	private final String engineKey;
+	private transient LayoutCache cache;
+	private boolean lastLayoutCached;
+
+	/**
+	 * Caches the layouts of an engine in the shared cache.
+	 *
+	 * @param engine engine calculating the layouts
+	 */
+	public CachingLayoutEngine(LayoutEngine engine) {
+		this(engine, LayoutCache.getShared());
+	}
+
+	/**
+	 * @param engine engine calculating the layouts
+	 * @param cache cache of the layouts
+	 */
+	public CachingLayoutEngine(LayoutEngine engine, LayoutCache cache) {
+		this(engine, cache, engine.getClass().getName());
+	}
+
+	/**
+	 * @param engine engine calculating the layouts
+	 * @param cache cache of the layouts
+	 * @param engineKey identification of the engine and of its configuration,
+	 *        engines with different settings must have different keys
+	 */
+	public CachingLayoutEngine(LayoutEngine engine, LayoutCache cache, String engineKey) {
+		super();
+		this.engine = engine;
+		this.cache = cache;
+		this.engineKey = engineKey;
+	}
+
+	@Override
+	public LayoutEngineModel getModel() {
+		return engine.getModel();
+	}
+
+	public LayoutEngine getEngine() {
+		return engine;
+	}
+
+	public LayoutCache getCache() {
+		// the cache is not serialized, a deserialized engine uses the shared one
+		return cache == null ? LayoutCache.getShared() : cache;
+	}
+
+	/**
+	 * @return true if the last layout has been taken from the cache
+	 */
+	public boolean isLastLayoutCached() {
+		return lastLayoutCached;
+	}
+
+	@Override
+	public void layout(int width, int height, Collection<NodeProxy> lockedNodes) {
+		if (isTimeLimited()) {
+			lastLayoutCached = false;
+			engine.layout(width, height, lockedNodes);
+			return;
+		}
+		LayoutCache.Key key = LayoutCache.key(engineKey(), getModel(), width, height, lockedNodes);
+		lastLayoutCached = getCache().apply(key, getModel());
+		if (!lastLayoutCached) {
+			engine.layout(width, height, lockedNodes);
+			getCache().put(key, getModel());
+		}
+	}
+
+	@Override
+	public LayoutEngine snapshot() {
+		LayoutEngine copy = engine.snapshot();
+		return copy == null ? null : new CachingLayoutEngine(copy, getCache(), engineKey);
+	}
+
+	private boolean isTimeLimited() {
+		return engine instanceof BudgetedLayoutEngine
+				&& ((BudgetedLayoutEngine) engine).getBudget().getMaxMillis() > 0;
+	}
+
+	private String engineKey() {
+		StringBuilder key = new StringBuilder(engineKey);
+		if (engine instanceof SeededLayoutEngine) {
+			key.append(";seed=").append(((SeededLayoutEngine) engine).getSeed());
+		}
+		if (engine instanceof BudgetedLayoutEngine) {
+			key.append(';').append(((BudgetedLayoutEngine) engine).getBudget());
+		}
+		return key.toString();
+	}
+}
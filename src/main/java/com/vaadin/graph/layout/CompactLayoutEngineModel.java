@@ -0,0 +1,444 @@
+package com.vaadin.graph.layout;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.shared.ArcProxy;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Memory efficient layout model. Node and arc IDs are interned to dense ints
+ * in open addressing tables, arc ends and adjacency lists are kept in
+ * growable int arrays, so every element is stored once and there are no
+ * per-element maps or boxed integers. {@link #degree(NodeProxy)} is O(1),
+ * {@link #getNeighbors(NodeProxy)} is O(degree) and allocates only its result.
+ * Slots of removed elements are reused.
+ * <p>
+ * Like {@link JungLayoutEngineModel} this is a directed multigraph. It can be
+ * used with all engines working on {@link LayoutGraph}, but not with the JUNG
+ * engines, which need a {@link JungLayoutEngineModel}.
+ */
+public class CompactLayoutEngineModel implements LayoutEngineModel, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int[] NO_ARCS = new int[0];
+
+	private final IdIndex nodeIndex = new IdIndex();
+	private final IdIndex arcIndex = new IdIndex();
+
+	private NodeProxy[] nodes = new NodeProxy[16];
+	private int[][] outArcs = new int[16][];
+	private int[][] inArcs = new int[16][];
+	private int[] outDegree = new int[16];
+	private int[] inDegree = new int[16];
+	private int nodeSlots = 0;
+	private int nodeCount = 0;
+	private int[] freeNodes = new int[4];
+	private int freeNodeCount = 0;
+
+	private ArcProxy[] arcs = new ArcProxy[16];
+	private int[] arcFrom = new int[16];
+	private int[] arcTo = new int[16];
+	private int arcSlots = 0;
+	private int arcCount = 0;
+	private int[] freeArcs = new int[4];
+	private int freeArcCount = 0;
+
+	// marks of the neighbors collected by getNeighbors
+	private transient int[] marks;
+	private transient int mark;
+	private transient int modCount;
+
+	private final Collection<NodeProxy> nodeView = new View<NodeProxy>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		NodeProxy[] elements() {
+			return nodes;
+		}
+
+		@Override
+		int slots() {
+			return nodeSlots;
+		}
+
+		@Override
+		public int size() {
+			return nodeCount;
+		}
+	};
+
+	private final Collection<ArcProxy> arcView = new View<ArcProxy>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		ArcProxy[] elements() {
+			return arcs;
+		}
+
+		@Override
+		int slots() {
+			return arcSlots;
+		}
+
+		@Override
+		public int size() {
+			return arcCount;
+		}
+	};
+
+	@Override
+	public boolean addNode(NodeProxy v) {
+		if (nodeIndex.get(v.getId()) >= 0) {
+			return false;
+		}
+		int i;
+		if (freeNodeCount > 0) {
+			i = freeNodes[--freeNodeCount];
+		} else {
+			i = nodeSlots++;
+			if (i == nodes.length) {
+				int capacity = nodes.length * 2;
+				nodes = Arrays.copyOf(nodes, capacity);
+				outArcs = Arrays.copyOf(outArcs, capacity);
+				inArcs = Arrays.copyOf(inArcs, capacity);
+				outDegree = Arrays.copyOf(outDegree, capacity);
+				inDegree = Arrays.copyOf(inDegree, capacity);
+			}
+		}
+		nodes[i] = v;
+		outArcs[i] = NO_ARCS;
+		inArcs[i] = NO_ARCS;
+		outDegree[i] = 0;
+		inDegree[i] = 0;
+		nodeIndex.put(v.getId(), i);
+		nodeCount++;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Adds an arc between two nodes of the model. An arc with the ID of an
+	 * arc already in the model is ignored.
+	 *
+	 * @throws IllegalArgumentException if an end of the arc is not in the model
+	 */
+	@Override
+	public void addArc(ArcProxy arc) {
+		int from = nodeIndex.get(arc.getFromNode());
+		int to = nodeIndex.get(arc.getToNode());
+		if (from < 0 || to < 0) {
+			throw new IllegalArgumentException("ends of " + arc + " must be in the model");
+		}
+		if (arcIndex.get(arc.getId()) >= 0) {
+			return;
+		}
+		int a;
+		if (freeArcCount > 0) {
+			a = freeArcs[--freeArcCount];
+		} else {
+			a = arcSlots++;
+			if (a == arcs.length) {
+				int capacity = arcs.length * 2;
+				arcs = Arrays.copyOf(arcs, capacity);
+				arcFrom = Arrays.copyOf(arcFrom, capacity);
+				arcTo = Arrays.copyOf(arcTo, capacity);
+			}
+		}
+		arcs[a] = arc;
+		arcFrom[a] = from;
+		arcTo[a] = to;
+		arcIndex.put(arc.getId(), a);
+		outArcs[from] = append(outArcs[from], outDegree[from]++, a);
+		inArcs[to] = append(inArcs[to], inDegree[to]++, a);
+		arcCount++;
+		modCount++;
+	}
+
+	@Override
+	public boolean removeNode(NodeProxy v) {
+		int i = nodeIndex.get(v.getId());
+		if (i < 0) {
+			return false;
+		}
+		while (outDegree[i] > 0) {
+			removeArc(outArcs[i][outDegree[i] - 1]);
+		}
+		while (inDegree[i] > 0) {
+			removeArc(inArcs[i][inDegree[i] - 1]);
+		}
+		nodeIndex.remove(v.getId());
+		nodes[i] = null;
+		outArcs[i] = null;
+		inArcs[i] = null;
+		if (freeNodeCount == freeNodes.length) {
+			freeNodes = Arrays.copyOf(freeNodes, freeNodeCount * 2);
+		}
+		freeNodes[freeNodeCount++] = i;
+		nodeCount--;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Removes an arc from the model.
+	 *
+	 * @param arc arc to remove
+	 * @return true if the arc was in the model
+	 */
+	public boolean removeArc(ArcProxy arc) {
+		int a = arcIndex.get(arc.getId());
+		if (a < 0) {
+			return false;
+		}
+		removeArc(a);
+		return true;
+	}
+
+	private void removeArc(int a) {
+		int from = arcFrom[a];
+		int to = arcTo[a];
+		outDegree[from] = removeFrom(outArcs[from], outDegree[from], a);
+		inDegree[to] = removeFrom(inArcs[to], inDegree[to], a);
+		arcIndex.remove(arcs[a].getId());
+		arcs[a] = null;
+		if (freeArcCount == freeArcs.length) {
+			freeArcs = Arrays.copyOf(freeArcs, freeArcCount * 2);
+		}
+		freeArcs[freeArcCount++] = a;
+		arcCount--;
+		modCount++;
+	}
+
+	@Override
+	public int degree(NodeProxy v) {
+		int i = nodeIndex.get(v.getId());
+		return i < 0 ? 0 : outDegree[i] + inDegree[i];
+	}
+
+	/**
+	 * @return the distinct nodes connected to the given node by an arc in either direction
+	 */
+	@Override
+	public Collection<NodeProxy> getNeighbors(NodeProxy node) {
+		int i = nodeIndex.get(node.getId());
+		if (i < 0) {
+			return new ArrayList<NodeProxy>(0);
+		}
+		if (marks == null || marks.length < nodeSlots) {
+			marks = new int[nodes.length];
+			mark = 0;
+		}
+		if (++mark == 0) {
+			Arrays.fill(marks, 0);
+			mark = 1;
+		}
+		List<NodeProxy> neighbors = new ArrayList<NodeProxy>(outDegree[i] + inDegree[i]);
+		for (int k = 0; k < outDegree[i]; k++) {
+			collect(arcTo[outArcs[i][k]], neighbors);
+		}
+		for (int k = 0; k < inDegree[i]; k++) {
+			collect(arcFrom[inArcs[i][k]], neighbors);
+		}
+		return neighbors;
+	}
+
+	private void collect(int j, List<NodeProxy> neighbors) {
+		if (marks[j] != mark) {
+			marks[j] = mark;
+			neighbors.add(nodes[j]);
+		}
+	}
+
+	@Override
+	public NodeProxy getNode(String id) {
+		int i = nodeIndex.get(id);
+		return i < 0 ? null : nodes[i];
+	}
+
+	/**
+	 * @return live view of the nodes, the model must not be changed while iterating it
+	 */
+	@Override
+	public Collection<NodeProxy> getNodes() {
+		return nodeView;
+	}
+
+	@Override
+	public ArcProxy getArc(String id) {
+		int a = arcIndex.get(id);
+		return a < 0 ? null : arcs[a];
+	}
+
+	/**
+	 * @return live view of the arcs, the model must not be changed while iterating it
+	 */
+	@Override
+	public Collection<ArcProxy> getArcs() {
+		return arcView;
+	}
+
+	private static int[] append(int[] list, int size, int value) {
+		if (size == list.length) {
+			list = Arrays.copyOf(list, Math.max(4, size * 2));
+		}
+		list[size] = value;
+		return list;
+	}
+
+	/**
+	 * Removes a value by moving the last one into its place.
+	 *
+	 * @return new size of the list
+	 */
+	private static int removeFrom(int[] list, int size, int value) {
+		for (int k = 0; k < size; k++) {
+			if (list[k] == value) {
+				list[k] = list[size - 1];
+				return size - 1;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Live collection of the non-empty slots of an element array.
+	 */
+	private abstract class View<T> extends AbstractCollection<T> implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		abstract T[] elements();
+
+		abstract int slots();
+
+		@Override
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				private final int expectedModCount = modCount;
+				private int next = advance(0);
+
+				private int advance(int from) {
+					T[] elements = elements();
+					int slots = slots();
+					while (from < slots && elements[from] == null) {
+						from++;
+					}
+					return from;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return next < slots();
+				}
+
+				@Override
+				public T next() {
+					if (modCount != expectedModCount) {
+						throw new ConcurrentModificationException();
+					}
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					T element = elements()[next];
+					next = advance(next + 1);
+					return element;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Open addressing hash table from IDs to slots, with linear probing and
+	 * backward shift deletion.
+	 */
+	private static final class IdIndex implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private String[] keys = new String[32];
+		private int[] values = new int[32];
+		private int size = 0;
+
+		int get(String id) {
+			if (id == null) {
+				return -1;
+			}
+			int mask = keys.length - 1;
+			for (int h = hash(id) & mask;; h = (h + 1) & mask) {
+				String key = keys[h];
+				if (key == null) {
+					return -1;
+				}
+				if (key.equals(id)) {
+					return values[h];
+				}
+			}
+		}
+
+		void put(String id, int value) {
+			if (2 * (size + 1) > keys.length) {
+				resize(keys.length * 2);
+			}
+			int mask = keys.length - 1;
+			int h = hash(id) & mask;
+			while (keys[h] != null) {
+				if (keys[h].equals(id)) {
+					values[h] = value;
+					return;
+				}
+				h = (h + 1) & mask;
+			}
+			keys[h] = id;
+			values[h] = value;
+			size++;
+		}
+
+		void remove(String id) {
+			int mask = keys.length - 1;
+			int h = hash(id) & mask;
+			while (keys[h] != null && !keys[h].equals(id)) {
+				h = (h + 1) & mask;
+			}
+			if (keys[h] == null) {
+				return;
+			}
+			// shift following entries of the probe sequence back into the gap
+			int gap = h;
+			for (int k = (gap + 1) & mask; keys[k] != null; k = (k + 1) & mask) {
+				int home = hash(keys[k]) & mask;
+				if (((k - home) & mask) >= ((k - gap) & mask)) {
+					keys[gap] = keys[k];
+					values[gap] = values[k];
+					gap = k;
+				}
+			}
+			keys[gap] = null;
+			size--;
+		}
+
+		private void resize(int capacity) {
+			String[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new String[capacity];
+			values = new int[capacity];
+			size = 0;
+			for (int k = 0; k < oldKeys.length; k++) {
+				if (oldKeys[k] != null) {
+					put(oldKeys[k], oldValues[k]);
+				}
+			}
+		}
+
+		private static int hash(String id) {
+			int h = id.hashCode();
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package com.vaadin.graph.layout;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.vaadin.graph.BudgetedLayoutEngine;
+import com.vaadin.graph.LayoutBudget;
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.LayoutStats;
+import com.vaadin.graph.SeededLayoutEngine;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Fruchterman-Reingold style layout engine which keeps its simulation state
+ * (positions and per-node temperature) between calls. Only the first layout
+ * runs a full simulation; afterwards new nodes are placed next to an already
+ * placed neighbor and relaxed together with their neighborhood by a short,
+ * cooling local pass, so the cost of a layout follows the size of the change
+ * rather than the size of the graph.
+ */
+public class IncrementalFRLayoutEngine implements BudgetedLayoutEngine, SeededLayoutEngine {
+	private static final long serialVersionUID = 1L;
+
+	private static final double MIN_TEMPERATURE = 0.5;
+
+	private static final Comparator<Vertex> BY_ID = (a, b) -> a.node.getId().compareTo(b.node.getId());
+
+	private final LayoutEngineModel model;
+	private final Map<String, Vertex> vertices = new HashMap<String, Vertex>();
+	private transient Random random;
+
+	private int fullIterations = 300;
+	private int localIterations = 40;
+	private int width = 0;
+	private int height = 0;
+	private LayoutBudget budget = LayoutBudget.UNLIMITED;
+	private LayoutStats lastStats;
+	private Long seed;
+
+	public IncrementalFRLayoutEngine() {
+		this(new JungLayoutEngineModel());
+	}
+
+	public IncrementalFRLayoutEngine(LayoutEngineModel model) {
+		super();
+		this.model = model;
+	}
+
+	@Override
+	public LayoutEngineModel getModel() {
+		return model;
+	}
+
+	public int getFullIterations() {
+		return fullIterations;
+	}
+
+	/**
+	 * @param fullIterations number of iterations of the initial (full) simulation
+	 */
+	public void setFullIterations(int fullIterations) {
+		this.fullIterations = fullIterations;
+	}
+
+	public int getLocalIterations() {
+		return localIterations;
+	}
+
+	/**
+	 * @param localIterations number of iterations used to relax nodes affected by a change
+	 */
+	public void setLocalIterations(int localIterations) {
+		this.localIterations = localIterations;
+	}
+
+	@Override
+	public LayoutBudget getBudget() {
+		return budget;
+	}
+
+	@Override
+	public void setBudget(LayoutBudget budget) {
+		this.budget = budget == null ? LayoutBudget.UNLIMITED : budget;
+	}
+
+	@Override
+	public LayoutStats getLastStats() {
+		return lastStats;
+	}
+
+	@Override
+	public Long getSeed() {
+		return seed;
+	}
+
+	@Override
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Drop the simulation state, the next layout will run a full simulation again.
+	 */
+	public void reset() {
+		vertices.clear();
+	}
+
+	@Override
+	public void layout(int width, int height, Collection<NodeProxy> lockedNodes) {
+		random = seed == null ? new Random() : new Random(seed);
+		Set<String> locked = new HashSet<String>();
+		for (NodeProxy node : lockedNodes) {
+			locked.add(node.getId());
+		}
+
+		List<Vertex> added = new ArrayList<Vertex>();
+		List<Vertex> moved = new ArrayList<Vertex>();
+		Set<String> present = new HashSet<String>();
+		for (NodeProxy node : model.getNodes()) {
+			present.add(node.getId());
+			Vertex v = vertices.get(node.getId());
+			if (v == null) {
+				v = new Vertex(node);
+				vertices.put(node.getId(), v);
+				added.add(v);
+			} else {
+				v.node = node;
+				if (node.getX() != v.writtenX || node.getY() != v.writtenY) {
+					// moved by the user or by someone else
+					v.x = node.getX();
+					v.y = node.getY();
+					moved.add(v);
+				}
+			}
+			v.locked = locked.contains(node.getId());
+		}
+		vertices.keySet().retainAll(present);
+		// the iteration order of the model depends on its history, a seeded layout must not
+		Collections.sort(added, BY_ID);
+		Collections.sort(moved, BY_ID);
+		LayoutRun run = new LayoutRun(budget);
+		if (vertices.isEmpty()) {
+			lastStats = run.finish();
+			return;
+		}
+
+		boolean cold = added.size() == vertices.size();
+		if (!cold && (this.width != width || this.height != height) && this.width > 0 && this.height > 0) {
+			scale((double) width / this.width, (double) height / this.height);
+		}
+		this.width = width;
+		this.height = height;
+
+		double k = Math.sqrt((double) width * height / vertices.size());
+		place(added, k);
+
+		List<Vertex> active;
+		int iterations;
+		double temperature;
+		if (cold) {
+			active = new ArrayList<Vertex>(vertices.values());
+			Collections.sort(active, BY_ID);
+			iterations = fullIterations;
+			temperature = Math.max(width, height) / 10.0;
+		} else {
+			Set<Vertex> changed = new LinkedHashSet<Vertex>(added);
+			changed.addAll(moved);
+			Set<Vertex> neighborhood = new LinkedHashSet<Vertex>(changed);
+			for (Vertex v : changed) {
+				for (NodeProxy n : model.getNeighbors(v.node)) {
+					Vertex u = vertices.get(n.getId());
+					if (u != null) {
+						neighborhood.add(u);
+					}
+				}
+			}
+			active = new ArrayList<Vertex>(neighborhood);
+			Collections.sort(active, BY_ID);
+			iterations = localIterations;
+			temperature = k;
+		}
+		relax(active, iterations, temperature, k, run);
+		lastStats = run.finish();
+
+		for (Vertex v : vertices.values()) {
+			v.write();
+		}
+	}
+
+	/** Gives positions to new nodes, preferably next to an already placed neighbor. */
+	private void place(List<Vertex> added, double k) {
+		List<Vertex> unplaced = new ArrayList<Vertex>();
+		for (Vertex v : added) {
+			if (v.node.getX() >= 0 && v.node.getY() >= 0) {
+				v.x = v.node.getX();
+				v.y = v.node.getY();
+				v.placed = true;
+			} else {
+				unplaced.add(v);
+			}
+		}
+		Map<Vertex, Integer> children = new HashMap<Vertex, Integer>();
+		boolean progress = true;
+		while (!unplaced.isEmpty() && progress) {
+			progress = false;
+			List<Vertex> remaining = new ArrayList<Vertex>();
+			for (Vertex v : unplaced) {
+				Vertex parent = null;
+				for (NodeProxy n : model.getNeighbors(v.node)) {
+					Vertex u = vertices.get(n.getId());
+					if (u != null && u.placed && (parent == null || BY_ID.compare(u, parent) < 0)) {
+						parent = u;
+					}
+				}
+				if (parent == null) {
+					remaining.add(v);
+					continue;
+				}
+				Integer count = children.get(parent);
+				int i = count == null ? 0 : count;
+				children.put(parent, i + 1);
+				// spread siblings around the parent using the golden angle
+				double angle = i * 2.399963 + random.nextDouble() * 0.1;
+				double radius = k * (0.5 + 0.5 * random.nextDouble());
+				v.x = clamp(parent.x + radius * Math.cos(angle), width);
+				v.y = clamp(parent.y + radius * Math.sin(angle), height);
+				v.placed = true;
+				progress = true;
+			}
+			unplaced = remaining;
+		}
+		for (Vertex v : unplaced) {
+			v.x = random.nextInt(Math.max(width, 1));
+			v.y = random.nextInt(Math.max(height, 1));
+			v.placed = true;
+		}
+	}
+
+	private void scale(double sx, double sy) {
+		for (Vertex v : vertices.values()) {
+			v.x *= sx;
+			v.y *= sy;
+		}
+	}
+
+	private void relax(Collection<Vertex> active, int iterations, double temperature, double k, LayoutRun run) {
+		List<Vertex> moving = new ArrayList<Vertex>();
+		for (Vertex v : active) {
+			if (!v.locked) {
+				v.temperature = Math.max(v.temperature, temperature);
+				List<Vertex> adjacent = new ArrayList<Vertex>();
+				for (NodeProxy n : model.getNeighbors(v.node)) {
+					Vertex u = vertices.get(n.getId());
+					if (u != null && u != v) {
+						adjacent.add(u);
+					}
+				}
+				Collections.sort(adjacent, BY_ID);
+				v.adjacent = adjacent.toArray(new Vertex[adjacent.size()]);
+				moving.add(v);
+			}
+		}
+		if (moving.isEmpty() || iterations <= 0) {
+			return;
+		}
+		Vertex[] all = vertices.values().toArray(new Vertex[vertices.size()]);
+		Arrays.sort(all, BY_ID);
+		double k2 = k * k;
+		double cooling = Math.pow(MIN_TEMPERATURE / Math.max(temperature, MIN_TEMPERATURE), 1.0 / iterations);
+
+		for (int iteration = 0; iteration < iterations && run.mayContinue(); iteration++) {
+			for (Vertex v : moving) {
+				double fx = 0;
+				double fy = 0;
+				for (Vertex u : all) {
+					if (u == v) {
+						continue;
+					}
+					double dx = v.x - u.x;
+					double dy = v.y - u.y;
+					double d2 = dx * dx + dy * dy;
+					if (d2 < 0.01) {
+						dx = random.nextDouble() - 0.5;
+						dy = random.nextDouble() - 0.5;
+						d2 = dx * dx + dy * dy;
+					}
+					fx += dx * k2 / d2;
+					fy += dy * k2 / d2;
+				}
+				for (Vertex u : v.adjacent) {
+					double dx = v.x - u.x;
+					double dy = v.y - u.y;
+					double d = Math.sqrt(dx * dx + dy * dy);
+					fx -= dx * d / k;
+					fy -= dy * d / k;
+				}
+				v.fx = fx;
+				v.fy = fy;
+			}
+			double squared = 0;
+			double total = 0;
+			for (Vertex v : moving) {
+				double d = Math.sqrt(v.fx * v.fx + v.fy * v.fy);
+				if (d > 0) {
+					double step = Math.min(d, v.temperature);
+					double x = clamp(v.x + v.fx / d * step, width);
+					double y = clamp(v.y + v.fy / d * step, height);
+					double moved = (x - v.x) * (x - v.x) + (y - v.y) * (y - v.y);
+					squared += moved;
+					total += Math.sqrt(moved);
+					v.x = x;
+					v.y = y;
+				}
+				v.temperature *= cooling;
+			}
+			run.iterationDone(squared, total, moving.size());
+		}
+		for (Vertex v : moving) {
+			v.adjacent = null;
+		}
+	}
+
+	private static double clamp(double value, int max) {
+		return Math.min(Math.max(0, value), max);
+	}
+
+	/**
+	 * Simulation state of a single node.
+	 */
+	private static class Vertex implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private NodeProxy node;
+		private double x;
+		private double y;
+		private double fx;
+		private double fy;
+		private double temperature;
+		private boolean locked;
+		private boolean placed;
+		private int writtenX = Integer.MIN_VALUE;
+		private int writtenY = Integer.MIN_VALUE;
+		private transient Vertex[] adjacent;
+
+		Vertex(NodeProxy node) {
+			this.node = node;
+		}
+
+		void write() {
+			writtenX = (int) Math.round(x);
+			writtenY = (int) Math.round(y);
+			node.setX(writtenX);
+			node.setY(writtenY);
+		}
+	}
+}
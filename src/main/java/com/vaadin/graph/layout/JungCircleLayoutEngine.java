@@ -20,6 +20,11 @@ public class JungCircleLayoutEngine extends JungLayoutEngine {
 		super(model);
 	}
 
+	@Override
+	protected JungLayoutEngine newInstance(JungLayoutEngineModel model) {
+		return new JungCircleLayoutEngine(model);
+	}
+
 	@Override
 	protected AbstractLayout<NodeProxy, ArcProxy> createLayout(Graph<NodeProxy, ArcProxy> graph, Dimension size) {
 		CircleLayout<NodeProxy, ArcProxy> layout = new CircleLayout<NodeProxy, ArcProxy>(graph);
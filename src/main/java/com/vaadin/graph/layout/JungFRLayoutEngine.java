@@ -20,6 +20,11 @@ public class JungFRLayoutEngine extends JungLayoutEngine {
 		super(model);
 	}
 
+	@Override
+	protected JungLayoutEngine newInstance(JungLayoutEngineModel model) {
+		return new JungFRLayoutEngine(model);
+	}
+
 	protected AbstractLayout<NodeProxy, ArcProxy> createLayout(Graph<NodeProxy, ArcProxy> graph, Dimension size) {
 		return new FRLayout<NodeProxy, ArcProxy>(graph, size);
 	}
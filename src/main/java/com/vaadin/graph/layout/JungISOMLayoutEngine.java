@@ -20,6 +20,11 @@ public class JungISOMLayoutEngine extends JungLayoutEngine {
 		super(model);
 	}
 
+	@Override
+	protected JungLayoutEngine newInstance(JungLayoutEngineModel model) {
+		return new JungISOMLayoutEngine(model);
+	}
+
 	@Override
 	protected AbstractLayout<NodeProxy, ArcProxy> createLayout(Graph<NodeProxy, ArcProxy> graph, Dimension size) {
 		ISOMLayout<NodeProxy, ArcProxy> layout = new ISOMLayout<NodeProxy, ArcProxy>(graph);
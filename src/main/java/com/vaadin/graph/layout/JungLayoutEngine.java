@@ -2,12 +2,22 @@ package com.vaadin.graph.layout;
 
 import java.awt.Dimension;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import com.google.common.base.Function;
 
+import com.vaadin.graph.BudgetedLayoutEngine;
+import com.vaadin.graph.LayoutBudget;
 import com.vaadin.graph.LayoutEngine;
+import com.vaadin.graph.LayoutStats;
+import com.vaadin.graph.SeededLayoutEngine;
 import com.vaadin.graph.shared.ArcProxy;
 import com.vaadin.graph.shared.NodeProxy;
 
@@ -19,11 +29,14 @@ import edu.uci.ics.jung.graph.Graph;
  * LayoutEngine implementation using the JUNG library
  *
  */
-public abstract class JungLayoutEngine implements LayoutEngine {
+public abstract class JungLayoutEngine implements BudgetedLayoutEngine, SeededLayoutEngine {
 
 	private static final long serialVersionUID = 1L;
 
 	private final JungLayoutEngineModel model;
+	private LayoutBudget budget = LayoutBudget.UNLIMITED;
+	private LayoutStats lastStats;
+	private Long seed;
 		
 	protected JungLayoutEngine(JungLayoutEngineModel model) {
 		super();
@@ -33,6 +46,35 @@ public abstract class JungLayoutEngine implements LayoutEngine {
 	public JungLayoutEngineModel getModel() {
 		return model;
 	}
+
+	@Override
+	public LayoutBudget getBudget() {
+		return budget;
+	}
+
+	@Override
+	public void setBudget(LayoutBudget budget) {
+		this.budget = budget == null ? LayoutBudget.UNLIMITED : budget;
+	}
+
+	@Override
+	public LayoutStats getLastStats() {
+		return lastStats;
+	}
+
+	@Override
+	public Long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * The seed determines the initial positions of new nodes. Layouts which
+	 * draw random numbers internally (like JUNG's ISOM) are not affected.
+	 */
+	@Override
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
 	
 	public void layout(final int width, final int height, Collection<NodeProxy> lockedNodes) {
         AbstractLayout<NodeProxy, ArcProxy> layout = createLayout(model.getGraph(), new Dimension(width, height));
@@ -41,21 +83,56 @@ public abstract class JungLayoutEngine implements LayoutEngine {
             layout.lock(v, true);
         }
 
+        // draw the initial positions in ID order, JUNG visits the nodes in an order depending on the history of the graph
+        Random random = seed == null ? new Random() : new Random(seed);
+        List<NodeProxy> nodes = new ArrayList<NodeProxy>(model.getGraph().getVertices());
+        Collections.sort(nodes, Comparator.comparing(NodeProxy::getId));
+        final Map<String, Point2D> initial = new HashMap<String, Point2D>();
+        for (NodeProxy v : nodes) {
+            int x = v.getX();
+            int y = v.getY();
+            initial.put(v.getId(), new Point2D.Double(x == -1 ? random.nextInt(width) : x,
+                                                      y == -1 ? random.nextInt(height) : y));
+        }
         layout.setInitializer(new Function<NodeProxy, Point2D>() {
             public Point2D apply(NodeProxy input) {
-                int x = input.getX();
-                int y = input.getY();
-                return new Point2D.Double(x == -1 ? new Random().nextInt(width) : x,
-                                          y == -1 ? new Random().nextInt(height) : y);
+                return initial.get(input.getId());
             }
         });
 
         layout.initialize();
+        LayoutRun run = new LayoutRun(budget);
         if (layout instanceof IterativeContext) {
-        	while (!((IterativeContext)layout).done()) {
-        		((IterativeContext)layout).step();
+        	IterativeContext context = (IterativeContext) layout;
+        	Collection<NodeProxy> vertices = model.getGraph().getVertices();
+        	double[] previous = new double[2 * vertices.size()];
+        	while (!context.done() && run.mayContinue()) {
+        		if (!run.measuresDisplacement()) {
+        			context.step();
+        			run.iterationDone();
+        			continue;
+        		}
+        		int i = 0;
+        		for (NodeProxy v : vertices) {
+        			Point2D location = layout.apply(v);
+        			previous[i++] = location.getX();
+        			previous[i++] = location.getY();
+        		}
+        		context.step();
+        		double squared = 0;
+        		double total = 0;
+        		i = 0;
+        		for (NodeProxy v : vertices) {
+        			Point2D location = layout.apply(v);
+        			double dx = location.getX() - previous[i++];
+        			double dy = location.getY() - previous[i++];
+        			squared += dx * dx + dy * dy;
+        			total += Math.sqrt(dx * dx + dy * dy);
+        		}
+        		run.iterationDone(squared, total, vertices.size());
         	}
         }
+        lastStats = run.finish();
         for (NodeProxy v : model.getGraph().getVertices()) {
             Point2D location = layout.apply(v);
             v.setX((int) location.getX());
@@ -63,5 +140,25 @@ public abstract class JungLayoutEngine implements LayoutEngine {
         }
     }
 	
+	@Override
+	public LayoutEngine snapshot() {
+		JungLayoutEngine copy = newInstance(model.copy());
+		if (copy != null) {
+			copy.setBudget(budget);
+			copy.setSeed(seed);
+		}
+		return copy;
+	}
+
+	/**
+	 * Creates an engine of the same kind working on the given model, used by {@link #snapshot()}.
+	 * 
+	 * @param model model of the new engine
+	 * @return new engine or null if the subclass does not support snapshots
+	 */
+	protected JungLayoutEngine newInstance(JungLayoutEngineModel model) {
+		return null;
+	}
+
 	protected abstract AbstractLayout<NodeProxy, ArcProxy> createLayout(Graph<NodeProxy, ArcProxy> graph, Dimension size);
 }
@@ -130,4 +130,36 @@ public class JungLayoutEngineModel implements LayoutEngineModel {
     public Graph<NodeProxy, ArcProxy> getGraph() {
     	return graph;
     }
+
+    /**
+     * Creates a copy of this model with its own node proxies, so that positions may be
+     * computed on the copy without touching the nodes of this model.
+     * 
+     * @return detached copy of the model
+     */
+    public JungLayoutEngineModel copy() {
+    	return copyOf(this);
+    }
+
+    /**
+     * Creates a JUNG model with copies of the node proxies of the given model.
+     * 
+     * @param model model to copy
+     * @return detached copy of the model
+     */
+    public static JungLayoutEngineModel copyOf(LayoutEngineModel model) {
+    	JungLayoutEngineModel copy = new JungLayoutEngineModel();
+    	for (NodeProxy node : model.getNodes()) {
+    		NodeProxy c = new NodeProxy(node.getId());
+    		c.setKind(node.getKind());
+    		c.setState(node.getState());
+    		c.setX(node.getX());
+    		c.setY(node.getY());
+    		copy.addNode(c);
+    	}
+    	for (ArcProxy arc : model.getArcs()) {
+    		copy.addArc(arc);
+    	}
+    	return copy;
+    }
 }
@@ -0,0 +1,474 @@
+package com.vaadin.graph.layout;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import com.vaadin.graph.LayoutEngine;
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.shared.ArcProxy;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Layered (Sugiyama style) layout engine for directed graphs, arcs point
+ * downwards.
+ * <ol>
+ * <li>Cycles are broken by reversing the back arcs of a depth first search.</li>
+ * <li>Layers are assigned by longest path from the sources, sources are then
+ * moved down next to their highest successor to shorten arcs.</li>
+ * <li>Arcs spanning several layers get a dummy node on every layer they
+ * cross.</li>
+ * <li>Crossings are reduced by a bounded number of barycenter sweeps, down
+ * and up.</li>
+ * <li>Coordinates are assigned in linear time: every node moves towards the
+ * barycenter of its neighbors on the previous layer, overlaps are resolved
+ * by averaging a left and a right aligned placement.</li>
+ * </ol>
+ * Apart from the sorting in the sweeps all steps are linear in the size of the
+ * graph including the dummy nodes. Locked nodes keep their position, the
+ * layout is moved to match them.
+ */
+public class LayeredLayoutEngine implements LayoutEngine {
+	private static final long serialVersionUID = 1L;
+
+	private static final int PLACEMENT_PASSES = 3;
+
+	private final LayoutEngineModel model;
+
+	private int sweeps = 4;
+	private double nodeSpacing = 80;
+	private double layerDistance = 0;
+
+	public LayeredLayoutEngine() {
+		this(new JungLayoutEngineModel());
+	}
+
+	public LayeredLayoutEngine(LayoutEngineModel model) {
+		super();
+		this.model = model;
+	}
+
+	@Override
+	public LayoutEngineModel getModel() {
+		return model;
+	}
+
+	public int getSweeps() {
+		return sweeps;
+	}
+
+	/**
+	 * @param sweeps number of down and up crossing reduction sweeps
+	 */
+	public void setSweeps(int sweeps) {
+		this.sweeps = sweeps;
+	}
+
+	public double getNodeSpacing() {
+		return nodeSpacing;
+	}
+
+	/**
+	 * @param nodeSpacing horizontal distance of neighboring nodes on a layer in
+	 *        pixels, reduced if the widest layer does not fit the canvas
+	 */
+	public void setNodeSpacing(double nodeSpacing) {
+		this.nodeSpacing = nodeSpacing;
+	}
+
+	public double getLayerDistance() {
+		return layerDistance;
+	}
+
+	/**
+	 * @param layerDistance vertical distance of the layers in pixels, 0 to
+	 *        spread the layers over the canvas height
+	 */
+	public void setLayerDistance(double layerDistance) {
+		this.layerDistance = layerDistance;
+	}
+
+	@Override
+	public LayoutEngine snapshot() {
+		LayeredLayoutEngine copy = new LayeredLayoutEngine(JungLayoutEngineModel.copyOf(model));
+		copy.setSweeps(sweeps);
+		copy.setNodeSpacing(nodeSpacing);
+		copy.setLayerDistance(layerDistance);
+		return copy;
+	}
+
+	@Override
+	public void layout(int width, int height, Collection<NodeProxy> lockedNodes) {
+		LayoutGraph graph = LayoutGraph.of(model, lockedNodes);
+		int n = graph.size();
+		if (n == 0) {
+			return;
+		}
+
+		// directed arcs without loops
+		Collection<ArcProxy> arcs = model.getArcs();
+		int[] from = new int[arcs.size()];
+		int[] to = new int[arcs.size()];
+		int m = 0;
+		for (ArcProxy arc : arcs) {
+			int f = graph.indexOf(arc.getFromNode());
+			int t = graph.indexOf(arc.getToNode());
+			if (f >= 0 && t >= 0 && f != t) {
+				from[m] = f;
+				to[m] = t;
+				m++;
+			}
+		}
+
+		breakCycles(n, from, to, m);
+		int[] layer = assignLayers(n, from, to, m);
+
+		// split long arcs by dummy nodes, all segments then connect adjacent layers
+		int total = n;
+		int segments = 0;
+		for (int e = 0; e < m; e++) {
+			total += layer[to[e]] - layer[from[e]] - 1;
+			segments += layer[to[e]] - layer[from[e]];
+		}
+		layer = Arrays.copyOf(layer, total);
+		int[] upper = new int[segments];
+		int[] lower = new int[segments];
+		int s = 0;
+		int dummy = n;
+		for (int e = 0; e < m; e++) {
+			int previous = from[e];
+			for (int l = layer[from[e]] + 1; l < layer[to[e]]; l++) {
+				layer[dummy] = l;
+				upper[s] = previous;
+				lower[s++] = dummy;
+				previous = dummy++;
+			}
+			upper[s] = previous;
+			lower[s++] = to[e];
+		}
+		int[] upOffsets = new int[total + 1];
+		int[] up = csr(total, lower, upper, segments, upOffsets);
+		int[] downOffsets = new int[total + 1];
+		int[] down = csr(total, upper, lower, segments, downOffsets);
+
+		int layers = 0;
+		for (int v = 0; v < total; v++) {
+			layers = Math.max(layers, layer[v] + 1);
+		}
+		Integer[][] order = initialOrder(total, layer, layers, downOffsets, down);
+		double[] position = new double[total];
+		double[] key = new double[total];
+		updatePositions(order, position);
+		for (int sweep = 0; sweep < sweeps; sweep++) {
+			for (int l = 1; l < layers; l++) {
+				sortByBarycenter(order[l], position, key, upOffsets, up);
+			}
+			for (int l = layers - 2; l >= 0; l--) {
+				sortByBarycenter(order[l], position, key, downOffsets, down);
+			}
+		}
+
+		double[] coordinate = new double[total];
+		for (int v = 0; v < total; v++) {
+			coordinate[v] = position[v];
+		}
+		for (int pass = 0; pass < PLACEMENT_PASSES; pass++) {
+			if (pass % 2 == 0) {
+				for (int l = 1; l < layers; l++) {
+					place(order[l], coordinate, upOffsets, up);
+				}
+			} else {
+				for (int l = layers - 2; l >= 0; l--) {
+					place(order[l], coordinate, downOffsets, down);
+				}
+			}
+		}
+
+		toCanvas(graph, layer, layers, coordinate, width, height);
+		graph.writeBack();
+	}
+
+	/**
+	 * Reverses the back arcs of an iterative depth first search.
+	 */
+	private static void breakCycles(int n, int[] from, int[] to, int m) {
+		int[] offsets = new int[n + 1];
+		int[] arcIds = arcsByNode(n, from, m, offsets);
+		int[] state = new int[n];
+		int[] stack = new int[n];
+		int[] next = new int[n];
+		for (int root = 0; root < n; root++) {
+			if (state[root] != 0) {
+				continue;
+			}
+			int top = 0;
+			stack[0] = root;
+			state[root] = 1;
+			next[root] = offsets[root];
+			while (top >= 0) {
+				int v = stack[top];
+				if (next[v] < offsets[v + 1]) {
+					int e = arcIds[next[v]++];
+					int w = to[e];
+					if (state[w] == 1) {
+						to[e] = from[e];
+						from[e] = w;
+					} else if (state[w] == 0) {
+						state[w] = 1;
+						next[w] = offsets[w];
+						stack[++top] = w;
+					}
+				} else {
+					state[v] = 2;
+					top--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Longest path layering of an acyclic graph, followed by moving every
+	 * source right above its highest successor.
+	 */
+	private static int[] assignLayers(int n, int[] from, int[] to, int m) {
+		int[] offsets = new int[n + 1];
+		int[] arcIds = arcsByNode(n, from, m, offsets);
+		int[] indegree = new int[n];
+		for (int e = 0; e < m; e++) {
+			indegree[to[e]]++;
+		}
+		boolean[] source = new boolean[n];
+		int[] topological = new int[n];
+		int tail = 0;
+		for (int v = 0; v < n; v++) {
+			if (indegree[v] == 0) {
+				source[v] = true;
+				topological[tail++] = v;
+			}
+		}
+		int[] layer = new int[n];
+		for (int head = 0; head < tail; head++) {
+			int v = topological[head];
+			for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+				int w = to[arcIds[a]];
+				layer[w] = Math.max(layer[w], layer[v] + 1);
+				if (--indegree[w] == 0) {
+					topological[tail++] = w;
+				}
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			if (source[v] && offsets[v + 1] > offsets[v]) {
+				int highest = Integer.MAX_VALUE;
+				for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+					highest = Math.min(highest, layer[to[arcIds[a]]]);
+				}
+				layer[v] = highest - 1;
+			}
+		}
+		return layer;
+	}
+
+	/**
+	 * Groups the arc ids by their start node.
+	 */
+	private static int[] arcsByNode(int n, int[] from, int m, int[] offsets) {
+		for (int e = 0; e < m; e++) {
+			offsets[from[e] + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] arcIds = new int[m];
+		int[] fill = new int[n];
+		for (int e = 0; e < m; e++) {
+			arcIds[offsets[from[e]] + fill[from[e]]++] = e;
+		}
+		return arcIds;
+	}
+
+	/**
+	 * Adjacency in compressed sparse row form: for each node a the nodes b of its pairs.
+	 */
+	private static int[] csr(int n, int[] a, int[] b, int count, int[] offsets) {
+		for (int e = 0; e < count; e++) {
+			offsets[a[e] + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] adjacent = new int[count];
+		int[] fill = new int[n];
+		for (int e = 0; e < count; e++) {
+			adjacent[offsets[a[e]] + fill[a[e]]++] = b[e];
+		}
+		return adjacent;
+	}
+
+	/**
+	 * Orders every layer by a depth first traversal along the arcs, which
+	 * keeps the children of a node together.
+	 */
+	private static Integer[][] initialOrder(int total, int[] layer, int layers, int[] offsets, int[] down) {
+		int[] size = new int[layers];
+		for (int v = 0; v < total; v++) {
+			size[layer[v]]++;
+		}
+		Integer[][] order = new Integer[layers][];
+		for (int l = 0; l < layers; l++) {
+			order[l] = new Integer[size[l]];
+		}
+		int[] fill = new int[layers];
+		boolean[] visited = new boolean[total];
+		int[] stack = new int[total];
+		for (int root = 0; root < total; root++) {
+			if (visited[root]) {
+				continue;
+			}
+			int top = 0;
+			stack[0] = root;
+			visited[root] = true;
+			while (top >= 0) {
+				int v = stack[top--];
+				order[layer[v]][fill[layer[v]]++] = v;
+				for (int a = offsets[v + 1] - 1; a >= offsets[v]; a--) {
+					int w = down[a];
+					if (!visited[w]) {
+						visited[w] = true;
+						stack[++top] = w;
+					}
+				}
+			}
+		}
+		return order;
+	}
+
+	private static void updatePositions(Integer[][] order, double[] position) {
+		for (Integer[] nodes : order) {
+			for (int p = 0; p < nodes.length; p++) {
+				position[nodes[p]] = p;
+			}
+		}
+	}
+
+	/**
+	 * Sorts a layer by the average position of the neighbors on the adjacent
+	 * layer, nodes without neighbors keep their position.
+	 */
+	private static void sortByBarycenter(Integer[] nodes, final double[] position, final double[] key,
+			int[] offsets, int[] adjacent) {
+		for (Integer v : nodes) {
+			int degree = offsets[v + 1] - offsets[v];
+			if (degree == 0) {
+				key[v] = position[v];
+			} else {
+				double sum = 0;
+				for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+					sum += position[adjacent[a]];
+				}
+				key[v] = sum / degree;
+			}
+		}
+		// stable, ties keep their current order
+		Arrays.sort(nodes, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = Double.compare(key[a], key[b]);
+				return c != 0 ? c : Double.compare(position[a], position[b]);
+			}
+		});
+		for (int p = 0; p < nodes.length; p++) {
+			position[nodes[p]] = p;
+		}
+	}
+
+	/**
+	 * Moves the nodes of a layer towards the barycenter of their neighbors on
+	 * the adjacent layer, keeping their order and a distance of at least 1.
+	 */
+	private static void place(Integer[] nodes, double[] coordinate, int[] offsets, int[] adjacent) {
+		int k = nodes.length;
+		if (k == 0) {
+			return;
+		}
+		double[] desired = new double[k];
+		for (int p = 0; p < k; p++) {
+			int v = nodes[p];
+			int degree = offsets[v + 1] - offsets[v];
+			if (degree == 0) {
+				desired[p] = coordinate[v];
+			} else {
+				double sum = 0;
+				for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+					sum += coordinate[adjacent[a]];
+				}
+				desired[p] = sum / degree;
+			}
+		}
+		double[] left = new double[k];
+		double[] right = new double[k];
+		for (int p = 0; p < k; p++) {
+			left[p] = p == 0 ? desired[p] : Math.max(desired[p], left[p - 1] + 1);
+		}
+		for (int p = k - 1; p >= 0; p--) {
+			right[p] = p == k - 1 ? desired[p] : Math.min(desired[p], right[p + 1] - 1);
+		}
+		for (int p = 0; p < k; p++) {
+			coordinate[nodes[p]] = (left[p] + right[p]) / 2;
+		}
+	}
+
+	/**
+	 * Scales the layer coordinates to the canvas and aligns them with the
+	 * locked nodes (or centers them if there are none).
+	 */
+	private void toCanvas(LayoutGraph graph, int[] layer, int layers, double[] coordinate, int width,
+			int height) {
+		int n = graph.size();
+		double[] x = graph.getX();
+		double[] y = graph.getY();
+		boolean[] locked = graph.getLocked();
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (double c : coordinate) {
+			min = Math.min(min, c);
+			max = Math.max(max, c);
+		}
+		double spacing = max > min ? Math.min(nodeSpacing, width / (max - min + 1)) : nodeSpacing;
+		double distance = layerDistance > 0 ? layerDistance : (double) height / (layers + 1);
+		double[] px = new double[n];
+		double[] py = new double[n];
+		for (int v = 0; v < n; v++) {
+			px[v] = (coordinate[v] - min) * spacing;
+			py[v] = layer[v] * distance;
+		}
+
+		// centered below a margin of one layer, or moved by the mean offset of the locked nodes
+		double dx = (width - (max - min) * spacing) / 2.0;
+		double dy = distance;
+		int anchors = 0;
+		double sumX = 0;
+		double sumY = 0;
+		for (int v = 0; v < n; v++) {
+			if (locked[v]) {
+				sumX += x[v] - px[v];
+				sumY += y[v] - py[v];
+				anchors++;
+			}
+		}
+		if (anchors > 0) {
+			dx = sumX / anchors;
+			dy = sumY / anchors;
+		}
+		for (int v = 0; v < n; v++) {
+			if (!locked[v]) {
+				x[v] = clamp(px[v] + dx, width);
+				y[v] = clamp(py[v] + dy, height);
+			}
+		}
+	}
+
+	private static double clamp(double value, int max) {
+		return Math.min(Math.max(0, value), max);
+	}
+}
@@ -0,0 +1,222 @@
+package com.vaadin.graph.layout;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.shared.ArcProxy;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Bounded cache of layout results, keyed by a canonical hash of everything a
+ * deterministic layout depends on: the engine, the canvas size, the nodes with
+ * their current positions and locked flags and the arcs. Node and arc order do
+ * not matter. A single instance ({@link #getShared()}) is meant to be shared
+ * by all sessions of the application, see {@link CachingLayoutEngine}.
+ */
+public class LayoutCache {
+
+	private static final LayoutCache SHARED = new LayoutCache(1000, TimeUnit.MINUTES.toMillis(30));
+
+	private final Cache<Key, Positions> cache;
+
+	/**
+	 * @param maximumSize maximal number of cached layouts
+	 * @param expireAfterAccessMillis time after which an unused layout is
+	 *        dropped in milliseconds, 0 to keep layouts until evicted by size
+	 */
+	public LayoutCache(long maximumSize, long expireAfterAccessMillis) {
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats();
+		if (expireAfterAccessMillis > 0) {
+			builder.expireAfterAccess(expireAfterAccessMillis, TimeUnit.MILLISECONDS);
+		}
+		this.cache = builder.build();
+	}
+
+	/**
+	 * @return cache shared by the whole JVM, holding up to 1000 layouts for 30 minutes
+	 */
+	public static LayoutCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Computes the key of a layout calculation.
+	 *
+	 * @param engine identification of the engine and of its configuration
+	 * @param model model to lay out
+	 * @param width canvas width
+	 * @param height canvas height
+	 * @param lockedNodes nodes which are not moved by the layout
+	 * @return key of the layout
+	 */
+	public static Key key(String engine, LayoutEngineModel model, int width, int height,
+			Collection<NodeProxy> lockedNodes) {
+		Set<String> locked = new HashSet<String>();
+		for (NodeProxy node : lockedNodes) {
+			locked.add(node.getId());
+		}
+		Collection<NodeProxy> nodes = model.getNodes();
+		String[] nodeIds = new String[nodes.size()];
+		int i = 0;
+		for (NodeProxy node : nodes) {
+			nodeIds[i++] = node.getId();
+		}
+		Arrays.sort(nodeIds);
+		Collection<ArcProxy> arcs = model.getArcs();
+		String[] arcEnds = new String[arcs.size()];
+		i = 0;
+		for (ArcProxy arc : arcs) {
+			arcEnds[i++] = arc.getFromNode() + '\u0000' + arc.getToNode();
+		}
+		Arrays.sort(arcEnds);
+
+		MessageDigest digest = newDigest();
+		update(digest, engine);
+		update(digest, width);
+		update(digest, height);
+		update(digest, nodeIds.length);
+		for (String id : nodeIds) {
+			NodeProxy node = model.getNode(id);
+			update(digest, id);
+			update(digest, node.getX());
+			update(digest, node.getY());
+			update(digest, locked.contains(id) ? 1 : 0);
+		}
+		update(digest, arcEnds.length);
+		for (String ends : arcEnds) {
+			update(digest, ends);
+		}
+		return new Key(digest.digest(), nodeIds);
+	}
+
+	/**
+	 * Sets the node positions of a cached layout.
+	 *
+	 * @param key key of the layout
+	 * @param model model to set the positions in
+	 * @return true if the layout was cached, false if the model has not been changed
+	 */
+	public boolean apply(Key key, LayoutEngineModel model) {
+		Positions positions = cache.getIfPresent(key);
+		if (positions == null || !Arrays.equals(positions.nodeIds, key.nodeIds)) {
+			return false;
+		}
+		for (int i = 0; i < positions.nodeIds.length; i++) {
+			NodeProxy node = model.getNode(positions.nodeIds[i]);
+			node.setX(positions.x[i]);
+			node.setY(positions.y[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the node positions of a model as the result of a layout.
+	 *
+	 * @param key key computed before the layout
+	 * @param model laid out model
+	 */
+	public void put(Key key, LayoutEngineModel model) {
+		int n = key.nodeIds.length;
+		int[] x = new int[n];
+		int[] y = new int[n];
+		for (int i = 0; i < n; i++) {
+			NodeProxy node = model.getNode(key.nodeIds[i]);
+			if (node == null) {
+				// the layout changed the model, don't cache it
+				return;
+			}
+			x[i] = node.getX();
+			y[i] = node.getY();
+		}
+		cache.put(key, new Positions(key.nodeIds, x, y));
+	}
+
+	/**
+	 * @return hit, miss and eviction counts since the cache has been created
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		update(digest, bytes.length);
+		digest.update(bytes);
+	}
+
+	private static void update(MessageDigest digest, int value) {
+		digest.update((byte) (value >>> 24));
+		digest.update((byte) (value >>> 16));
+		digest.update((byte) (value >>> 8));
+		digest.update((byte) value);
+	}
+
+	/**
+	 * Key of a layout: the hash identifying it, plus the sorted node IDs used
+	 * to verify a hit and to store the result.
+	 */
+	public static final class Key {
+		private final byte[] hash;
+		private final int hashCode;
+		private final String[] nodeIds;
+
+		private Key(byte[] hash, String[] nodeIds) {
+			this.hash = hash;
+			this.hashCode = Arrays.hashCode(hash);
+			this.nodeIds = nodeIds;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(hash, ((Key) obj).hash);
+		}
+	}
+
+	/**
+	 * Cached layout result, node positions in the order of the sorted node IDs.
+	 */
+	private static final class Positions {
+		private final String[] nodeIds;
+		private final int[] x;
+		private final int[] y;
+
+		Positions(String[] nodeIds, int[] x, int[] y) {
+			this.nodeIds = nodeIds;
+			this.x = x;
+			this.y = y;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package com.vaadin.graph.layout;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.shared.ArcProxy;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Primitive working copy of a {@link LayoutEngineModel} for layout
+ * algorithms: node coordinates in {@code double[]} arrays and the undirected
+ * adjacency in compressed sparse row form (the neighbors of node {@code i}
+ * are {@code adjacent[offsets[i]] .. adjacent[offsets[i + 1] - 1]}).
+ * <p>
+ * The graph is built once per layout, iterations work on the arrays only and
+ * the coordinates are written back to the node proxies by {@link #writeBack()}.
+ * Nodes are ordered by ID and neighbors by index, not by the iteration order of
+ * the model, which may depend on its history: a seeded layout of the same graph
+ * gives the same positions in every session.
+ */
+public final class LayoutGraph {
+
+	private final NodeProxy[] nodes;
+	private final Map<String, Integer> index;
+	private final double[] x;
+	private final double[] y;
+	private final boolean[] locked;
+	private final int[] offsets;
+	private final int[] adjacent;
+
+	private LayoutGraph(NodeProxy[] nodes, Map<String, Integer> index, int[] offsets, int[] adjacent) {
+		this.nodes = nodes;
+		this.index = index;
+		this.x = new double[nodes.length];
+		this.y = new double[nodes.length];
+		this.locked = new boolean[nodes.length];
+		this.offsets = offsets;
+		this.adjacent = adjacent;
+		for (int i = 0; i < nodes.length; i++) {
+			x[i] = nodes[i].getX();
+			y[i] = nodes[i].getY();
+		}
+	}
+
+	/**
+	 * Builds the working copy of a model. Arcs between the same pair of nodes
+	 * are kept as parallel entries, loops are dropped.
+	 *
+	 * @param model model to lay out
+	 * @param lockedNodes nodes which must not be moved
+	 * @return working copy, with the current node positions (-1 for unplaced nodes)
+	 */
+	public static LayoutGraph of(LayoutEngineModel model, Collection<NodeProxy> lockedNodes) {
+		Collection<NodeProxy> modelNodes = model.getNodes();
+		int n = modelNodes.size();
+		NodeProxy[] nodes = modelNodes.toArray(new NodeProxy[n]);
+		Arrays.sort(nodes, Comparator.comparing(NodeProxy::getId));
+		Map<String, Integer> index = new HashMap<String, Integer>(n * 2);
+		for (int i = 0; i < n; i++) {
+			index.put(nodes[i].getId(), i);
+		}
+
+		Collection<ArcProxy> arcs = model.getArcs();
+		int[] from = new int[arcs.size()];
+		int[] to = new int[arcs.size()];
+		int[] offsets = new int[n + 1];
+		int m = 0;
+		for (ArcProxy arc : arcs) {
+			Integer f = index.get(arc.getFromNode());
+			Integer t = index.get(arc.getToNode());
+			if (f != null && t != null && f.intValue() != t.intValue()) {
+				from[m] = f;
+				to[m] = t;
+				offsets[f + 1]++;
+				offsets[t + 1]++;
+				m++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] adjacent = new int[2 * m];
+		int[] fill = new int[n];
+		for (int e = 0; e < m; e++) {
+			adjacent[offsets[from[e]] + fill[from[e]]++] = to[e];
+			adjacent[offsets[to[e]] + fill[to[e]]++] = from[e];
+		}
+		for (int i = 0; i < n; i++) {
+			Arrays.sort(adjacent, offsets[i], offsets[i + 1]);
+		}
+
+		LayoutGraph graph = new LayoutGraph(nodes, index, offsets, adjacent);
+		for (NodeProxy node : lockedNodes) {
+			Integer i = index.get(node.getId());
+			if (i != null) {
+				graph.locked[i] = true;
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Gives a random position within the canvas to every node which has not been placed yet.
+	 *
+	 * @param width canvas width
+	 * @param height canvas height
+	 * @param random source of the positions
+	 */
+	public void placeUnplaced(int width, int height, Random random) {
+		for (int i = 0; i < nodes.length; i++) {
+			if (x[i] < 0 || y[i] < 0) {
+				x[i] = random.nextInt(Math.max(width, 1));
+				y[i] = random.nextInt(Math.max(height, 1));
+			}
+		}
+	}
+
+	/**
+	 * Copies the computed coordinates to the node proxies.
+	 */
+	public void writeBack() {
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i].setX((int) Math.round(x[i]));
+			nodes[i].setY((int) Math.round(y[i]));
+		}
+	}
+
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * @return number of (undirected) arcs
+	 */
+	public int arcCount() {
+		return adjacent.length / 2;
+	}
+
+	public NodeProxy getNode(int i) {
+		return nodes[i];
+	}
+
+	/**
+	 * @param id node ID
+	 * @return index of the node or -1 if there is no such node
+	 */
+	public int indexOf(String id) {
+		Integer i = index.get(id);
+		return i == null ? -1 : i;
+	}
+
+	public int degree(int i) {
+		return offsets[i + 1] - offsets[i];
+	}
+
+	/** @return x coordinates, indexed by node */
+	public double[] getX() {
+		return x;
+	}
+
+	/** @return y coordinates, indexed by node */
+	public double[] getY() {
+		return y;
+	}
+
+	/** @return locked flags, indexed by node */
+	public boolean[] getLocked() {
+		return locked;
+	}
+
+	/** @return start of the neighbors of each node in {@link #getAdjacent()}, plus the end as last entry */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	/** @return neighbors of all nodes, grouped by node */
+	public int[] getAdjacent() {
+		return adjacent;
+	}
+}
@@ -0,0 +1,98 @@
+package com.vaadin.graph.layout;
+
+import com.vaadin.graph.LayoutBudget;
+import com.vaadin.graph.LayoutStats;
+import com.vaadin.graph.LayoutStats.StopReason;
+
+/**
+ * Keeps track of a single iterative layout calculation and decides when it
+ * has to stop according to its {@link LayoutBudget}.
+ * 
+ * <pre>
+ * LayoutRun run = new LayoutRun(budget);
+ * while (!done() &amp;&amp; run.mayContinue()) {
+ *     step();
+ *     run.iterationDone(squaredDisplacement, totalDisplacement, nodes);
+ * }
+ * stats = run.finish();
+ * </pre>
+ */
+public final class LayoutRun {
+
+	private final LayoutBudget budget;
+	private final long start = System.nanoTime();
+	private int iterations = 0;
+	private double energy = 0;
+	private double averageDisplacement = Double.NaN;
+	private StopReason stopReason = null;
+
+	public LayoutRun(LayoutBudget budget) {
+		this.budget = budget == null ? LayoutBudget.UNLIMITED : budget;
+	}
+
+	/**
+	 * @return true if the budget allows another iteration
+	 */
+	public boolean mayContinue() {
+		if (stopReason != null) {
+			return false;
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			stopReason = StopReason.INTERRUPTED;
+		} else if (budget.getMaxIterations() > 0 && iterations >= budget.getMaxIterations()) {
+			stopReason = StopReason.ITERATION_LIMIT;
+		} else if (budget.getMaxMillis() > 0 && elapsedMillis() >= budget.getMaxMillis()) {
+			stopReason = StopReason.TIME_LIMIT;
+		} else if (iterations > 0 && averageDisplacement < budget.getDisplacementThreshold()) {
+			stopReason = StopReason.CONVERGED;
+		}
+		return stopReason == null;
+	}
+
+	/**
+	 * Record a finished iteration.
+	 * 
+	 * @param squaredDisplacement sum of squared displacements of all nodes in the iteration
+	 * @param totalDisplacement sum of displacements of all nodes in the iteration
+	 * @param nodes number of nodes the displacements have been summed over
+	 */
+	public void iterationDone(double squaredDisplacement, double totalDisplacement, int nodes) {
+		iterations++;
+		energy = squaredDisplacement;
+		averageDisplacement = nodes > 0 ? totalDisplacement / nodes : 0;
+	}
+
+	/**
+	 * Record a finished iteration whose displacements have not been measured,
+	 * see {@link #measuresDisplacement()}.
+	 */
+	public void iterationDone() {
+		iterations++;
+	}
+
+	/**
+	 * @return true if the budget has a displacement threshold, otherwise measuring displacements can be skipped
+	 */
+	public boolean measuresDisplacement() {
+		return budget.getDisplacementThreshold() > 0;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Finish the calculation.
+	 * 
+	 * @return statistics of the calculation
+	 */
+	public LayoutStats finish() {
+		StopReason reason = stopReason == null ? StopReason.DONE : stopReason;
+		return new LayoutStats(iterations, elapsedMillis(), energy,
+				Double.isNaN(averageDisplacement) ? 0 : averageDisplacement, reason);
+	}
+
+	private long elapsedMillis() {
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
@@ -0,0 +1,498 @@
+package com.vaadin.graph.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import com.vaadin.graph.BudgetedLayoutEngine;
+import com.vaadin.graph.LayoutBudget;
+import com.vaadin.graph.LayoutEngine;
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.LayoutStats;
+import com.vaadin.graph.SeededLayoutEngine;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Multilevel force directed layout engine for large graphs.
+ * <p>
+ * The graph is coarsened repeatedly: neighbors are matched in pairs (heavy
+ * arc matching), nodes left without a partner are collapsed into a neighboring
+ * group. Each level has at most about half as many nodes as the previous one.
+ * The coarsest level is laid out by a full simulation, then every level is
+ * interpolated to the next finer one (members start at the position of their
+ * group) and refined by a short simulation. The simulations use Barnes-Hut
+ * repulsion, so the whole calculation is O(n log n).
+ * <p>
+ * Locked nodes are never merged with other nodes and keep their position on
+ * all levels. Positions of nodes which have been placed before are used as
+ * starting positions of their groups on the coarsest level.
+ */
+public class MultilevelLayoutEngine implements BudgetedLayoutEngine, SeededLayoutEngine {
+	private static final long serialVersionUID = 1L;
+
+	private static final double MIN_TEMPERATURE = 0.5;
+	private static final int MAX_LEVELS = 40;
+	/** coarsening stops when a level does not shrink below this ratio */
+	private static final double MIN_REDUCTION = 0.9;
+
+	private final LayoutEngineModel model;
+	private transient QuadTree tree;
+
+	private int coarsestSize = 50;
+	private int coarsestIterations = 300;
+	private int refineIterations = 30;
+	private double theta = 0.8;
+	private LayoutBudget budget = LayoutBudget.UNLIMITED;
+	private LayoutStats lastStats;
+	private Long seed;
+
+	public MultilevelLayoutEngine() {
+		this(new JungLayoutEngineModel());
+	}
+
+	public MultilevelLayoutEngine(LayoutEngineModel model) {
+		super();
+		this.model = model;
+	}
+
+	@Override
+	public LayoutEngineModel getModel() {
+		return model;
+	}
+
+	public int getCoarsestSize() {
+		return coarsestSize;
+	}
+
+	/**
+	 * @param coarsestSize coarsening stops once a level has at most this many nodes
+	 */
+	public void setCoarsestSize(int coarsestSize) {
+		this.coarsestSize = coarsestSize;
+	}
+
+	public int getCoarsestIterations() {
+		return coarsestIterations;
+	}
+
+	/**
+	 * @param coarsestIterations number of iterations of the simulation on the coarsest level
+	 */
+	public void setCoarsestIterations(int coarsestIterations) {
+		this.coarsestIterations = coarsestIterations;
+	}
+
+	public int getRefineIterations() {
+		return refineIterations;
+	}
+
+	/**
+	 * @param refineIterations number of iterations of the simulation on each finer level
+	 */
+	public void setRefineIterations(int refineIterations) {
+		this.refineIterations = refineIterations;
+	}
+
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * @param theta Barnes-Hut opening criterion, see {@link BarnesHutLayoutEngine#setTheta(double)}
+	 */
+	public void setTheta(double theta) {
+		this.theta = theta;
+	}
+
+	@Override
+	public LayoutBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Set limits for subsequent layout calculations. The limits apply to the
+	 * whole calculation; when they are reached the remaining levels are only
+	 * interpolated, not refined.
+	 */
+	@Override
+	public void setBudget(LayoutBudget budget) {
+		this.budget = budget == null ? LayoutBudget.UNLIMITED : budget;
+	}
+
+	@Override
+	public LayoutStats getLastStats() {
+		return lastStats;
+	}
+
+	@Override
+	public Long getSeed() {
+		return seed;
+	}
+
+	@Override
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public LayoutEngine snapshot() {
+		MultilevelLayoutEngine copy = new MultilevelLayoutEngine(JungLayoutEngineModel.copyOf(model));
+		copy.setCoarsestSize(coarsestSize);
+		copy.setCoarsestIterations(coarsestIterations);
+		copy.setRefineIterations(refineIterations);
+		copy.setTheta(theta);
+		copy.setBudget(budget);
+		copy.setSeed(seed);
+		return copy;
+	}
+
+	@Override
+	public void layout(int width, int height, Collection<NodeProxy> lockedNodes) {
+		LayoutRun run = new LayoutRun(budget);
+		LayoutGraph graph = LayoutGraph.of(model, lockedNodes);
+		int n = graph.size();
+		if (n == 0) {
+			lastStats = run.finish();
+			return;
+		}
+		if (tree == null) {
+			tree = new QuadTree(n);
+		}
+
+		List<Level> levels = new ArrayList<Level>();
+		levels.add(Level.of(graph));
+		while (levels.size() < MAX_LEVELS) {
+			Level fine = levels.get(levels.size() - 1);
+			if (fine.n <= coarsestSize) {
+				break;
+			}
+			Level coarse = fine.coarsen();
+			if (coarse.n > fine.n * MIN_REDUCTION) {
+				break;
+			}
+			levels.add(coarse);
+		}
+
+		Level coarsest = levels.get(levels.size() - 1);
+		Random random = seed == null ? new Random() : new Random(seed);
+		for (int i = 0; i < coarsest.n; i++) {
+			if (coarsest.x[i] < 0 || coarsest.y[i] < 0) {
+				coarsest.x[i] = random.nextInt(Math.max(width, 1));
+				coarsest.y[i] = random.nextInt(Math.max(height, 1));
+			}
+		}
+		double area = (double) width * height;
+		simulate(coarsest, n, Math.sqrt(area / coarsest.n), Math.max(width, height) / 10.0,
+				coarsestIterations, width, height, run);
+		for (int l = levels.size() - 2; l >= 0; l--) {
+			Level level = levels.get(l);
+			double k = Math.sqrt(area / level.n);
+			level.interpolate(levels.get(l + 1), k, width, height);
+			simulate(level, n, k, k, refineIterations, width, height, run);
+		}
+
+		lastStats = run.finish();
+		graph.writeBack();
+	}
+
+	/**
+	 * Runs a cooling Fruchterman-Reingold simulation on a level.
+	 *
+	 * @param total number of nodes of the finest level
+	 */
+	private void simulate(Level level, int total, double k, double temperature, int iterations, int width,
+			int height, LayoutRun run) {
+		int n = level.n;
+		double[] x = level.x;
+		double[] y = level.y;
+		// masses relative to the average group, the repulsion of a level is
+		// then comparable to the one of a graph with unit masses
+		double[] relative = new double[n];
+		for (int i = 0; i < n; i++) {
+			relative[i] = level.mass[i] * n / total;
+		}
+		double averageWeight = level.averageArcWeight();
+		double[] fx = new double[n];
+		double[] fy = new double[n];
+		double cooling = Math.pow(MIN_TEMPERATURE / Math.max(temperature, MIN_TEMPERATURE),
+				1.0 / Math.max(iterations, 1));
+
+		for (int iteration = 0; iteration < iterations && run.mayContinue(); iteration++) {
+			tree.build(x, y, relative, n);
+			for (int i = 0; i < n; i++) {
+				fx[i] = 0;
+				fy[i] = 0;
+				if (level.locked[i]) {
+					continue;
+				}
+				tree.repulse(i, fx, fy, k * k, theta);
+				for (int a = level.offsets[i]; a < level.offsets[i + 1]; a++) {
+					int j = level.adjacent[a];
+					double dx = x[i] - x[j];
+					double dy = y[i] - y[j];
+					double d = Math.sqrt(dx * dx + dy * dy);
+					double w = level.weight[a] / averageWeight;
+					fx[i] -= w * dx * d / k;
+					fy[i] -= w * dy * d / k;
+				}
+			}
+			double squared = 0;
+			double moved = 0;
+			for (int i = 0; i < n; i++) {
+				double d = Math.sqrt(fx[i] * fx[i] + fy[i] * fy[i]);
+				if (level.locked[i] || d == 0) {
+					continue;
+				}
+				double step = Math.min(d, temperature);
+				double nx = clamp(x[i] + fx[i] / d * step, width);
+				double ny = clamp(y[i] + fy[i] / d * step, height);
+				double s = (nx - x[i]) * (nx - x[i]) + (ny - y[i]) * (ny - y[i]);
+				squared += s;
+				moved += Math.sqrt(s);
+				x[i] = nx;
+				y[i] = ny;
+			}
+			temperature *= cooling;
+			run.iterationDone(squared, moved, n);
+		}
+	}
+
+	private static double clamp(double value, int max) {
+		return Math.min(Math.max(0, value), max);
+	}
+
+	/**
+	 * A level of the coarsening hierarchy: a weighted graph in compressed
+	 * sparse row form whose nodes are groups of nodes of the finer level.
+	 */
+	private static final class Level {
+		private final int n;
+		private final int[] offsets;
+		private final int[] adjacent;
+		/** weight of each entry of adjacent, the number of finest arcs it stands for */
+		private final double[] weight;
+		/** number of finest nodes in each node */
+		private final double[] mass;
+		private final boolean[] locked;
+		private final double[] x;
+		private final double[] y;
+		/** node of the next coarser level containing each node, set by coarsen() */
+		private int[] group;
+
+		private Level(int n, int[] offsets, int[] adjacent, double[] weight, double[] mass, boolean[] locked,
+				double[] x, double[] y) {
+			this.n = n;
+			this.offsets = offsets;
+			this.adjacent = adjacent;
+			this.weight = weight;
+			this.mass = mass;
+			this.locked = locked;
+			this.x = x;
+			this.y = y;
+		}
+
+		/**
+		 * Finest level, sharing the arrays of the layout graph.
+		 */
+		static Level of(LayoutGraph graph) {
+			int n = graph.size();
+			double[] weight = new double[graph.getAdjacent().length];
+			double[] mass = new double[n];
+			Arrays.fill(weight, 1);
+			Arrays.fill(mass, 1);
+			return new Level(n, graph.getOffsets(), graph.getAdjacent(), weight, mass, graph.getLocked(),
+					graph.getX(), graph.getY());
+		}
+
+		double averageArcWeight() {
+			double sum = 0;
+			for (double w : weight) {
+				sum += w;
+			}
+			return weight.length == 0 ? 1 : sum / weight.length;
+		}
+
+		/**
+		 * Builds the next coarser level.
+		 */
+		Level coarsen() {
+			group = new int[n];
+			Arrays.fill(group, -1);
+			int groups = 0;
+
+			// visit nodes by increasing degree, so that leaves find a partner first
+			int[] order = byDegree();
+			for (int i : order) {
+				if (group[i] >= 0 || locked[i]) {
+					continue;
+				}
+				int best = -1;
+				double bestScore = 0;
+				for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+					int j = adjacent[a];
+					if (group[j] < 0 && !locked[j] && j != i) {
+						// heavy arcs first, light groups preferred to keep the masses balanced
+						double score = weight[a] / (mass[i] * mass[j]);
+						if (score > bestScore) {
+							best = j;
+							bestScore = score;
+						}
+					}
+				}
+				if (best >= 0) {
+					group[i] = groups;
+					group[best] = groups;
+					groups++;
+				}
+			}
+
+			// collapse nodes without a partner into the lightest neighboring group
+			double[] groupMass = new double[n];
+			for (int i = 0; i < n; i++) {
+				if (group[i] >= 0) {
+					groupMass[group[i]] += mass[i];
+				}
+			}
+			for (int i : order) {
+				if (group[i] >= 0) {
+					continue;
+				}
+				int best = -1;
+				if (!locked[i]) {
+					for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+						int g = group[adjacent[a]];
+						if (g >= 0 && !locked[adjacent[a]] && (best < 0 || groupMass[g] < groupMass[best])) {
+							best = g;
+						}
+					}
+				}
+				if (best < 0) {
+					best = groups++;
+				}
+				group[i] = best;
+				groupMass[best] += mass[i];
+			}
+
+			// group attributes, starting position is the mean of the placed members
+			double[] coarseMass = new double[groups];
+			boolean[] coarseLocked = new boolean[groups];
+			double[] coarseX = new double[groups];
+			double[] coarseY = new double[groups];
+			double[] placedMass = new double[groups];
+			for (int i = 0; i < n; i++) {
+				int g = group[i];
+				coarseMass[g] += mass[i];
+				if (locked[i]) {
+					coarseLocked[g] = true;
+				}
+				if (x[i] >= 0 && y[i] >= 0) {
+					coarseX[g] += x[i] * mass[i];
+					coarseY[g] += y[i] * mass[i];
+					placedMass[g] += mass[i];
+				}
+			}
+			for (int g = 0; g < groups; g++) {
+				if (placedMass[g] > 0) {
+					coarseX[g] /= placedMass[g];
+					coarseY[g] /= placedMass[g];
+				} else {
+					coarseX[g] = -1;
+					coarseY[g] = -1;
+				}
+			}
+
+			// members of each group
+			int[] memberOffsets = new int[groups + 1];
+			for (int i = 0; i < n; i++) {
+				memberOffsets[group[i] + 1]++;
+			}
+			for (int g = 0; g < groups; g++) {
+				memberOffsets[g + 1] += memberOffsets[g];
+			}
+			int[] members = new int[n];
+			int[] fill = new int[groups];
+			for (int i = 0; i < n; i++) {
+				members[memberOffsets[group[i]] + fill[group[i]]++] = i;
+			}
+
+			// arcs between groups, parallel arcs merged by adding their weights
+			int[] coarseOffsets = new int[groups + 1];
+			int[] coarseAdjacent = new int[adjacent.length];
+			double[] coarseWeight = new double[adjacent.length];
+			int[] marker = new int[groups];
+			int[] position = new int[groups];
+			Arrays.fill(marker, -1);
+			int m = 0;
+			for (int g = 0; g < groups; g++) {
+				coarseOffsets[g] = m;
+				for (int p = memberOffsets[g]; p < memberOffsets[g + 1]; p++) {
+					int i = members[p];
+					for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+						int h = group[adjacent[a]];
+						if (h == g) {
+							continue;
+						}
+						if (marker[h] != g) {
+							marker[h] = g;
+							position[h] = m;
+							coarseAdjacent[m] = h;
+							coarseWeight[m] = weight[a];
+							m++;
+						} else {
+							coarseWeight[position[h]] += weight[a];
+						}
+					}
+				}
+			}
+			coarseOffsets[groups] = m;
+			return new Level(groups, coarseOffsets, Arrays.copyOf(coarseAdjacent, m),
+					Arrays.copyOf(coarseWeight, m), coarseMass, coarseLocked, coarseX, coarseY);
+		}
+
+		/**
+		 * Places the nodes of this level around the position of their group
+		 * on the coarser level. Locked nodes keep their own position.
+		 */
+		void interpolate(Level coarse, double k, int width, int height) {
+			int[] rank = new int[coarse.n];
+			for (int i = 0; i < n; i++) {
+				if (locked[i]) {
+					continue;
+				}
+				int g = group[i];
+				int r = rank[g]++;
+				if (r == 0) {
+					x[i] = coarse.x[g];
+					y[i] = coarse.y[g];
+				} else {
+					// spread the other members around the first one using the golden angle
+					double angle = r * 2.399963;
+					double radius = k * 0.3 * Math.sqrt(r);
+					x[i] = clamp(coarse.x[g] + radius * Math.cos(angle), width);
+					y[i] = clamp(coarse.y[g] + radius * Math.sin(angle), height);
+				}
+			}
+		}
+
+		private int[] byDegree() {
+			int maxDegree = 0;
+			for (int i = 0; i < n; i++) {
+				maxDegree = Math.max(maxDegree, offsets[i + 1] - offsets[i]);
+			}
+			int[] start = new int[maxDegree + 2];
+			for (int i = 0; i < n; i++) {
+				start[offsets[i + 1] - offsets[i] + 1]++;
+			}
+			for (int d = 0; d <= maxDegree; d++) {
+				start[d + 1] += start[d];
+			}
+			int[] order = new int[n];
+			for (int i = 0; i < n; i++) {
+				order[start[offsets[i + 1] - offsets[i]]++] = i;
+			}
+			return order;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package com.vaadin.graph.layout;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.vaadin.graph.BudgetedLayoutEngine;
+import com.vaadin.graph.LayoutBudget;
+import com.vaadin.graph.LayoutEngine;
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.LayoutStats;
+import com.vaadin.graph.SeededLayoutEngine;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Fruchterman-Reingold layout engine computing the forces of an iteration on
+ * all cores of a {@link ForkJoinPool}.
+ * <p>
+ * The nodes are split into a fixed number of chunks independent of the pool
+ * size. Each chunk computes the repulsion and attraction acting on its own
+ * nodes (attraction is summed over the adjacency list of a {@link LayoutGraph},
+ * not scattered over arcs) and sums its statistics separately, the partial sums
+ * are then combined in chunk order. The result therefore does not depend on
+ * the number of threads or on their scheduling.
+ * <p>
+ * Expected scaling: the O(n&sup2;) repulsion dominates an iteration and is
+ * split evenly, the serial part per iteration is O(n + m). For a few thousand
+ * nodes the serial fraction is around 1%, so by Amdahl's law an iteration is
+ * expected to be about 3.9x faster on 4 cores, 7.5x on 8, 14x on 16 and 24x on
+ * 32 cores than on one. These are estimates, not measurements; hyper-threads
+ * add little, and graphs below about 500 nodes are too small to gain much.
+ */
+public class ParallelFRLayoutEngine implements BudgetedLayoutEngine, SeededLayoutEngine {
+	private static final long serialVersionUID = 1L;
+
+	private static final double MIN_TEMPERATURE = 0.5;
+	private static final int NODES_PER_CHUNK = 64;
+
+	private final LayoutEngineModel model;
+	private transient ForkJoinPool pool;
+
+	private int iterations = 200;
+	private LayoutBudget budget = LayoutBudget.UNLIMITED;
+	private LayoutStats lastStats;
+	private Long seed;
+
+	public ParallelFRLayoutEngine() {
+		this(new JungLayoutEngineModel());
+	}
+
+	public ParallelFRLayoutEngine(LayoutEngineModel model) {
+		super();
+		this.model = model;
+	}
+
+	@Override
+	public LayoutEngineModel getModel() {
+		return model;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @param pool pool computing the forces, null for the common pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @param iterations number of iterations of the simulation
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	@Override
+	public LayoutBudget getBudget() {
+		return budget;
+	}
+
+	@Override
+	public void setBudget(LayoutBudget budget) {
+		this.budget = budget == null ? LayoutBudget.UNLIMITED : budget;
+	}
+
+	@Override
+	public LayoutStats getLastStats() {
+		return lastStats;
+	}
+
+	@Override
+	public Long getSeed() {
+		return seed;
+	}
+
+	@Override
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public LayoutEngine snapshot() {
+		ParallelFRLayoutEngine copy = new ParallelFRLayoutEngine(JungLayoutEngineModel.copyOf(model));
+		copy.setPool(pool);
+		copy.setIterations(iterations);
+		copy.setBudget(budget);
+		copy.setSeed(seed);
+		return copy;
+	}
+
+	@Override
+	public void layout(final int width, final int height, Collection<NodeProxy> lockedNodes) {
+		LayoutRun run = new LayoutRun(budget);
+		LayoutGraph graph = LayoutGraph.of(model, lockedNodes);
+		graph.placeUnplaced(width, height, seed == null ? new Random() : new Random(seed));
+		final int n = graph.size();
+		final double[] x = graph.getX();
+		final double[] y = graph.getY();
+		final boolean[] locked = graph.getLocked();
+		final int[] offsets = graph.getOffsets();
+		final int[] adjacent = graph.getAdjacent();
+
+		if (n > 0) {
+			ForkJoinPool executor = pool == null ? ForkJoinPool.commonPool() : pool;
+			final int chunks = (n + NODES_PER_CHUNK - 1) / NODES_PER_CHUNK;
+			final double k = Math.sqrt((double) width * height / n);
+			final double[] fx = new double[n];
+			final double[] fy = new double[n];
+			final double[] squared = new double[chunks];
+			final double[] total = new double[chunks];
+			// current temperature, shared with the move phase
+			final double[] temperature = { Math.max(width, height) / 10.0 };
+			double cooling = Math.pow(MIN_TEMPERATURE / Math.max(temperature[0], MIN_TEMPERATURE),
+					1.0 / Math.max(iterations, 1));
+
+			ChunkBody computeForces = chunk -> {
+				int end = Math.min(n, (chunk + 1) * NODES_PER_CHUNK);
+				for (int i = chunk * NODES_PER_CHUNK; i < end; i++) {
+					forces(i, n, x, y, fx, fy, locked, offsets, adjacent, k);
+				}
+			};
+			ChunkBody move = chunk -> {
+				int end = Math.min(n, (chunk + 1) * NODES_PER_CHUNK);
+				double s = 0;
+				double t = 0;
+				for (int i = chunk * NODES_PER_CHUNK; i < end; i++) {
+					double d = Math.sqrt(fx[i] * fx[i] + fy[i] * fy[i]);
+					if (locked[i] || d == 0) {
+						continue;
+					}
+					double step = Math.min(d, temperature[0]);
+					double nx = clamp(x[i] + fx[i] / d * step, width);
+					double ny = clamp(y[i] + fy[i] / d * step, height);
+					double moved = (nx - x[i]) * (nx - x[i]) + (ny - y[i]) * (ny - y[i]);
+					s += moved;
+					t += Math.sqrt(moved);
+					x[i] = nx;
+					y[i] = ny;
+				}
+				squared[chunk] = s;
+				total[chunk] = t;
+			};
+
+			for (int iteration = 0; iteration < iterations && run.mayContinue(); iteration++) {
+				executor.invoke(new ChunkTask(0, chunks, computeForces));
+				executor.invoke(new ChunkTask(0, chunks, move));
+				double s = 0;
+				double t = 0;
+				for (int chunk = 0; chunk < chunks; chunk++) {
+					s += squared[chunk];
+					t += total[chunk];
+				}
+				temperature[0] *= cooling;
+				run.iterationDone(s, t, n);
+			}
+		}
+		lastStats = run.finish();
+		graph.writeBack();
+	}
+
+	/**
+	 * Computes the force acting on node i. Reads positions only, writes only
+	 * the force of node i, so nodes can be processed in parallel.
+	 */
+	private static void forces(int i, int n, double[] x, double[] y, double[] fx, double[] fy, boolean[] locked,
+			int[] offsets, int[] adjacent, double k) {
+		double sx = 0;
+		double sy = 0;
+		if (!locked[i]) {
+			double k2 = k * k;
+			for (int j = 0; j < n; j++) {
+				if (j == i) {
+					continue;
+				}
+				double dx = x[i] - x[j];
+				double dy = y[i] - y[j];
+				double d2 = dx * dx + dy * dy;
+				if (d2 < 0.01) {
+					// deterministic push apart of nodes at the same position
+					dx = i < j ? -0.1 : 0.1;
+					dy = ((i + j) & 1) == 0 ? -0.1 : 0.1;
+					d2 = dx * dx + dy * dy;
+				}
+				sx += dx * k2 / d2;
+				sy += dy * k2 / d2;
+			}
+			for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+				int j = adjacent[a];
+				double dx = x[i] - x[j];
+				double dy = y[i] - y[j];
+				double d = Math.sqrt(dx * dx + dy * dy);
+				sx -= dx * d / k;
+				sy -= dy * d / k;
+			}
+		}
+		fx[i] = sx;
+		fy[i] = sy;
+	}
+
+	private static double clamp(double value, int max) {
+		return Math.min(Math.max(0, value), max);
+	}
+
+	/**
+	 * Work on a single chunk of nodes.
+	 */
+	@FunctionalInterface
+	private interface ChunkBody {
+		void run(int chunk);
+	}
+
+	/**
+	 * Runs a body on a range of chunks, splitting the range among the workers of the pool.
+	 */
+	private static final class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final ChunkBody body;
+
+		ChunkTask(int from, int to, ChunkBody body) {
+			this.from = from;
+			this.to = to;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				if (to > from) {
+					body.run(from);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ChunkTask(from, middle, body), new ChunkTask(middle, to, body));
+		}
+	}
+}
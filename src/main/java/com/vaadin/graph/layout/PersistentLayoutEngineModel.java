@@ -0,0 +1,447 @@
+package com.vaadin.graph.layout;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.shared.ArcProxy;
+import com.vaadin.graph.shared.NodeProxy;
+import com.vaadin.graph.shared.NodeProxy.NodeState;
+
+/**
+ * Layout model made of immutable {@link Version versions}. Every change
+ * creates a new version sharing everything unchanged with the previous one
+ * (hash array mapped tries), so {@link #snapshot()} is O(1), two versions are
+ * {@link #diff(Version, Version) compared} in time proportional to their
+ * differences, and a history of versions supports {@link #undo()} and
+ * {@link #redo()} without copying the graph.
+ * <p>
+ * Versions hold the node and arc proxies themselves. Proxies are mutable:
+ * positions and states set on a proxy show up in every version holding it.
+ * A version therefore captures which nodes and arcs there are, and
+ * {@link #commit()} additionally records the node states so that undo and
+ * redo can restore them. Positions are not restored, lay the graph out again
+ * after undo or redo. For the same reason background layouts still work on a
+ * copy made by the engine: a layout writing to shared proxies would move the
+ * nodes of the live model.
+ * <p>
+ * Use it with an engine accepting any model, e.g.
+ * {@code new BarnesHutLayoutEngine(new PersistentLayoutEngineModel())}. The
+ * {@link com.vaadin.graph.GraphExplorer} then finds the nodes and arcs to add
+ * and remove on the client by diffing versions, and supports undo and redo.
+ */
+public class PersistentLayoutEngineModel implements LayoutEngineModel, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final String[] NO_ARCS = new String[0];
+
+	private Version current = Version.EMPTY;
+	private Version committed = Version.EMPTY;
+	private final Deque<Version> undoHistory = new ArrayDeque<Version>();
+	private final Deque<Version> redoHistory = new ArrayDeque<Version>();
+	private int maxHistory = 50;
+
+	/**
+	 * @return the current version, O(1)
+	 */
+	public Version snapshot() {
+		return current;
+	}
+
+	public int getMaxHistory() {
+		return maxHistory;
+	}
+
+	/**
+	 * @param maxHistory maximal number of versions kept for undo
+	 */
+	public void setMaxHistory(int maxHistory) {
+		this.maxHistory = maxHistory;
+		while (undoHistory.size() > maxHistory) {
+			undoHistory.removeLast();
+		}
+	}
+
+	/**
+	 * Ends an undoable step (e.g. an expand or collapse): records the node
+	 * states and keeps the previous step for {@link #undo()}. Does nothing if
+	 * neither the graph nor a node state has changed since the last step.
+	 */
+	public void commit() {
+		PersistentMap<String, NodeState> states = committed.states;
+		for (NodeProxy node : current.nodes.values()) {
+			if (states.get(node.getId()) != node.getState()) {
+				states = states.plus(node.getId(), node.getState());
+			}
+		}
+		final PersistentMap<String, NodeState>[] pruned = new PersistentMap[] { states };
+		PersistentMap.diff(committed.nodes, current.nodes, new PersistentMap.DiffVisitor<String, NodeProxy>() {
+			@Override
+			public void added(String id, NodeProxy node) {
+			}
+
+			@Override
+			public void removed(String id, NodeProxy node) {
+				pruned[0] = pruned[0].minus(id);
+			}
+
+			@Override
+			public void changed(String id, NodeProxy oldNode, NodeProxy newNode) {
+			}
+		});
+		Version version = current.withStates(pruned[0]);
+		if (version.nodes == committed.nodes && version.arcs == committed.arcs && version.states == committed.states) {
+			return;
+		}
+		undoHistory.push(committed);
+		if (undoHistory.size() > maxHistory) {
+			undoHistory.removeLast();
+		}
+		redoHistory.clear();
+		committed = version;
+		current = version;
+	}
+
+	/**
+	 * Forgets all steps, the current version becomes the first one.
+	 */
+	public void clearHistory() {
+		undoHistory.clear();
+		redoHistory.clear();
+	}
+
+	public boolean canUndo() {
+		return !undoHistory.isEmpty();
+	}
+
+	public boolean canRedo() {
+		return !redoHistory.isEmpty();
+	}
+
+	/**
+	 * Goes back to the previous step, dropping uncommitted changes.
+	 *
+	 * @return false if there is no previous step
+	 */
+	public boolean undo() {
+		if (undoHistory.isEmpty()) {
+			return false;
+		}
+		redoHistory.push(committed);
+		restore(undoHistory.pop());
+		return true;
+	}
+
+	/**
+	 * Goes forward to the step undone last.
+	 *
+	 * @return false if there is nothing to redo
+	 */
+	public boolean redo() {
+		if (redoHistory.isEmpty()) {
+			return false;
+		}
+		undoHistory.push(committed);
+		restore(redoHistory.pop());
+		return true;
+	}
+
+	private void restore(Version version) {
+		committed = version;
+		current = version;
+		for (NodeProxy node : version.nodes.values()) {
+			NodeState state = version.states.get(node.getId());
+			if (state != null) {
+				node.setState(state);
+			}
+		}
+	}
+
+	/**
+	 * Compares two versions, e.g. a snapshot sent to the client with the current one.
+	 *
+	 * @return nodes and arcs added and removed on the way from one version to the other
+	 */
+	public static Diff diff(Version from, Version to) {
+		final Diff diff = new Diff();
+		PersistentMap.diff(from.nodes, to.nodes, new PersistentMap.DiffVisitor<String, NodeProxy>() {
+			@Override
+			public void added(String id, NodeProxy node) {
+				diff.addedNodes.add(node);
+			}
+
+			@Override
+			public void removed(String id, NodeProxy node) {
+				diff.removedNodes.add(node);
+			}
+
+			@Override
+			public void changed(String id, NodeProxy oldNode, NodeProxy newNode) {
+				diff.removedNodes.add(oldNode);
+				diff.addedNodes.add(newNode);
+			}
+		});
+		PersistentMap.diff(from.arcs, to.arcs, new PersistentMap.DiffVisitor<String, ArcProxy>() {
+			@Override
+			public void added(String id, ArcProxy arc) {
+				diff.addedArcs.add(arc);
+			}
+
+			@Override
+			public void removed(String id, ArcProxy arc) {
+				diff.removedArcs.add(arc);
+			}
+
+			@Override
+			public void changed(String id, ArcProxy oldArc, ArcProxy newArc) {
+				diff.removedArcs.add(oldArc);
+				diff.addedArcs.add(newArc);
+			}
+		});
+		return diff;
+	}
+
+	@Override
+	public boolean addNode(NodeProxy v) {
+		Version version = current.withNode(v);
+		if (version == current) {
+			return false;
+		}
+		current = version;
+		return true;
+	}
+
+	/**
+	 * Adds an arc between two nodes of the model. An arc with the ID of an
+	 * arc already in the model is ignored.
+	 *
+	 * @throws IllegalArgumentException if an end of the arc is not in the model
+	 */
+	@Override
+	public void addArc(ArcProxy arc) {
+		current = current.withArc(arc);
+	}
+
+	@Override
+	public boolean removeNode(NodeProxy v) {
+		Version version = current.withoutNode(v);
+		if (version == current) {
+			return false;
+		}
+		current = version;
+		return true;
+	}
+
+	@Override
+	public Collection<NodeProxy> getNodes() {
+		return current.getNodes();
+	}
+
+	@Override
+	public NodeProxy getNode(String id) {
+		return current.getNode(id);
+	}
+
+	@Override
+	public Collection<NodeProxy> getNeighbors(NodeProxy node) {
+		return current.getNeighbors(node);
+	}
+
+	@Override
+	public Collection<ArcProxy> getArcs() {
+		return current.getArcs();
+	}
+
+	@Override
+	public ArcProxy getArc(String id) {
+		return current.getArc(id);
+	}
+
+	@Override
+	public int degree(NodeProxy v) {
+		return current.degree(v);
+	}
+
+	/**
+	 * Immutable version of the model. It is a read-only {@link LayoutEngineModel},
+	 * e.g. to be copied for a background layout while the model keeps changing.
+	 */
+	public static final class Version implements LayoutEngineModel, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		static final Version EMPTY = new Version(PersistentMap.<String, NodeProxy> empty(),
+				PersistentMap.<String, ArcProxy> empty(), PersistentMap.<String, String[]> empty(),
+				PersistentMap.<String, NodeState> empty());
+
+		private final PersistentMap<String, NodeProxy> nodes;
+		private final PersistentMap<String, ArcProxy> arcs;
+		// IDs of the arcs at each node, copied on change
+		private final PersistentMap<String, String[]> incident;
+		private final PersistentMap<String, NodeState> states;
+
+		private Version(PersistentMap<String, NodeProxy> nodes, PersistentMap<String, ArcProxy> arcs,
+				PersistentMap<String, String[]> incident, PersistentMap<String, NodeState> states) {
+			this.nodes = nodes;
+			this.arcs = arcs;
+			this.incident = incident;
+			this.states = states;
+		}
+
+		Version withNode(NodeProxy v) {
+			if (nodes.containsKey(v.getId())) {
+				return this;
+			}
+			return new Version(nodes.plus(v.getId(), v), arcs, incident.plus(v.getId(), NO_ARCS), states);
+		}
+
+		Version withArc(ArcProxy arc) {
+			if (!nodes.containsKey(arc.getFromNode()) || !nodes.containsKey(arc.getToNode())) {
+				throw new IllegalArgumentException("ends of " + arc + " must be in the model");
+			}
+			if (arcs.containsKey(arc.getId())) {
+				return this;
+			}
+			PersistentMap<String, String[]> newIncident = incident.plus(arc.getFromNode(),
+					append(incident.get(arc.getFromNode()), arc.getId()));
+			if (!arc.getToNode().equals(arc.getFromNode())) {
+				newIncident = newIncident.plus(arc.getToNode(), append(newIncident.get(arc.getToNode()), arc.getId()));
+			}
+			return new Version(nodes, arcs.plus(arc.getId(), arc), newIncident, states);
+		}
+
+		Version withoutNode(NodeProxy v) {
+			String id = v.getId();
+			if (!nodes.containsKey(id)) {
+				return this;
+			}
+			PersistentMap<String, ArcProxy> newArcs = arcs;
+			PersistentMap<String, String[]> newIncident = incident;
+			for (String arcId : incident.get(id)) {
+				ArcProxy arc = arcs.get(arcId);
+				newArcs = newArcs.minus(arcId);
+				String other = id.equals(arc.getFromNode()) ? arc.getToNode() : arc.getFromNode();
+				if (!other.equals(id)) {
+					newIncident = newIncident.plus(other, without(newIncident.get(other), arcId));
+				}
+			}
+			return new Version(nodes.minus(id), newArcs, newIncident.minus(id), states);
+		}
+
+		Version withStates(PersistentMap<String, NodeState> newStates) {
+			return newStates == states ? this : new Version(nodes, arcs, incident, newStates);
+		}
+
+		@Override
+		public Collection<NodeProxy> getNodes() {
+			return nodes.values();
+		}
+
+		@Override
+		public NodeProxy getNode(String id) {
+			return nodes.get(id);
+		}
+
+		@Override
+		public Collection<NodeProxy> getNeighbors(NodeProxy node) {
+			String[] arcIds = incident.get(node.getId());
+			if (arcIds == null) {
+				return new ArrayList<NodeProxy>(0);
+			}
+			Set<NodeProxy> neighbors = new LinkedHashSet<NodeProxy>();
+			for (String arcId : arcIds) {
+				ArcProxy arc = arcs.get(arcId);
+				String other = node.getId().equals(arc.getFromNode()) ? arc.getToNode() : arc.getFromNode();
+				neighbors.add(nodes.get(other));
+			}
+			return neighbors;
+		}
+
+		@Override
+		public Collection<ArcProxy> getArcs() {
+			return arcs.values();
+		}
+
+		@Override
+		public ArcProxy getArc(String id) {
+			return arcs.get(id);
+		}
+
+		@Override
+		public int degree(NodeProxy v) {
+			String[] arcIds = incident.get(v.getId());
+			return arcIds == null ? 0 : arcIds.length;
+		}
+
+		@Override
+		public boolean addNode(NodeProxy v) {
+			throw new UnsupportedOperationException("versions are immutable");
+		}
+
+		@Override
+		public void addArc(ArcProxy arc) {
+			throw new UnsupportedOperationException("versions are immutable");
+		}
+
+		@Override
+		public boolean removeNode(NodeProxy v) {
+			throw new UnsupportedOperationException("versions are immutable");
+		}
+
+		private static String[] append(String[] ids, String id) {
+			String[] copy = Arrays.copyOf(ids, ids.length + 1);
+			copy[ids.length] = id;
+			return copy;
+		}
+
+		private static String[] without(String[] ids, String id) {
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i].equals(id)) {
+					String[] copy = new String[ids.length - 1];
+					System.arraycopy(ids, 0, copy, 0, i);
+					System.arraycopy(ids, i + 1, copy, i, copy.length - i);
+					return copy;
+				}
+			}
+			return ids;
+		}
+	}
+
+	/**
+	 * Nodes and arcs added and removed between two versions.
+	 */
+	public static final class Diff implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final List<NodeProxy> addedNodes = new ArrayList<NodeProxy>();
+		private final List<NodeProxy> removedNodes = new ArrayList<NodeProxy>();
+		private final List<ArcProxy> addedArcs = new ArrayList<ArcProxy>();
+		private final List<ArcProxy> removedArcs = new ArrayList<ArcProxy>();
+
+		public List<NodeProxy> getAddedNodes() {
+			return addedNodes;
+		}
+
+		public List<NodeProxy> getRemovedNodes() {
+			return removedNodes;
+		}
+
+		public List<ArcProxy> getAddedArcs() {
+			return addedArcs;
+		}
+
+		public List<ArcProxy> getRemovedArcs() {
+			return removedArcs;
+		}
+
+		public boolean isEmpty() {
+			return addedNodes.isEmpty() && removedNodes.isEmpty() && addedArcs.isEmpty() && removedArcs.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,440 @@
+package com.vaadin.graph.layout;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable hash array mapped trie. Every change returns a new map sharing
+ * all untouched branches with the old one, so a change costs O(log32 n) and
+ * keeping old versions costs only the changed paths. Two versions derived
+ * from each other are compared in time proportional to their differences.
+ */
+final class PersistentMap<K, V> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	@SuppressWarnings("rawtypes")
+	private static final PersistentMap EMPTY = new PersistentMap(null, 0);
+
+	/**
+	 * Receives the differences of two maps.
+	 */
+	interface DiffVisitor<K, V> {
+		void added(K key, V value);
+
+		void removed(K key, V value);
+
+		void changed(K key, V oldValue, V newValue);
+	}
+
+	private final Object root;
+	private final int size;
+
+	private PersistentMap(Object root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K, V> PersistentMap<K, V> empty() {
+		return EMPTY;
+	}
+
+	int size() {
+		return size;
+	}
+
+	V get(Object key) {
+		Leaf leaf = find(root, 0, hash(key), key);
+		return leaf == null ? null : value(leaf);
+	}
+
+	boolean containsKey(Object key) {
+		return find(root, 0, hash(key), key) != null;
+	}
+
+	PersistentMap<K, V> plus(K key, V value) {
+		int[] added = { 0 };
+		Object newRoot = root == null ? new Leaf(hash(key), key, value) : put(root, 0, hash(key), key, value, added);
+		if (newRoot == root) {
+			return this;
+		}
+		return new PersistentMap<K, V>(newRoot, root == null ? 1 : size + added[0]);
+	}
+
+	PersistentMap<K, V> minus(Object key) {
+		if (root == null) {
+			return this;
+		}
+		Object newRoot = remove(root, 0, hash(key), key);
+		if (newRoot == root) {
+			return this;
+		}
+		return newRoot == null ? PersistentMap.<K, V>empty() : new PersistentMap<K, V>(newRoot, size - 1);
+	}
+
+	/**
+	 * @return live read-only view of the values
+	 */
+	Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				final Iterator<Leaf> leaves = leaves();
+				return new Iterator<V>() {
+					@Override
+					public boolean hasNext() {
+						return leaves.hasNext();
+					}
+
+					@Override
+					public V next() {
+						return value(leaves.next());
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	Iterable<K> keys() {
+		return () -> {
+			final Iterator<Leaf> leaves = leaves();
+			return new Iterator<K>() {
+				@Override
+				public boolean hasNext() {
+					return leaves.hasNext();
+				}
+
+				@Override
+				public K next() {
+					return key(leaves.next());
+				}
+			};
+		};
+	}
+
+	/**
+	 * Reports the differences between two maps, skipping the branches they share.
+	 * Values are compared by identity.
+	 */
+	static <K, V> void diff(PersistentMap<K, V> from, PersistentMap<K, V> to, DiffVisitor<K, V> visitor) {
+		diff(from.root, to.root, 0, visitor);
+	}
+
+	private static <K, V> void diff(Object a, Object b, int shift, DiffVisitor<K, V> visitor) {
+		if (a == b) {
+			return;
+		}
+		if (a instanceof Branch && b instanceof Branch) {
+			Branch x = (Branch) a;
+			Branch y = (Branch) b;
+			int bits = x.bitmap | y.bitmap;
+			while (bits != 0) {
+				int bit = bits & -bits;
+				bits &= ~bit;
+				Object cx = (x.bitmap & bit) == 0 ? null : x.children[Integer.bitCount(x.bitmap & (bit - 1))];
+				Object cy = (y.bitmap & bit) == 0 ? null : y.children[Integer.bitCount(y.bitmap & (bit - 1))];
+				diff(cx, cy, shift + BITS, visitor);
+			}
+			return;
+		}
+		// different shapes, compare the entries of the two (small) subtrees
+		for (Iterator<Leaf> i = new LeafIterator(a); i.hasNext();) {
+			Leaf leaf = i.next();
+			Leaf other = find(b, shift, leaf.hash, leaf.key);
+			if (other == null) {
+				visitor.removed(PersistentMap.<K> cast(leaf.key), PersistentMap.<V> cast(leaf.value));
+			} else if (other.value != leaf.value) {
+				visitor.changed(PersistentMap.<K> cast(leaf.key), PersistentMap.<V> cast(leaf.value),
+						PersistentMap.<V> cast(other.value));
+			}
+		}
+		for (Iterator<Leaf> i = new LeafIterator(b); i.hasNext();) {
+			Leaf leaf = i.next();
+			if (find(a, shift, leaf.hash, leaf.key) == null) {
+				visitor.added(PersistentMap.<K> cast(leaf.key), PersistentMap.<V> cast(leaf.value));
+			}
+		}
+	}
+
+	private Iterator<Leaf> leaves() {
+		return new LeafIterator(root);
+	}
+
+	private static Leaf find(Object node, int shift, int hash, Object key) {
+		while (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((branch.bitmap & bit) == 0) {
+				return null;
+			}
+			node = branch.children[Integer.bitCount(branch.bitmap & (bit - 1))];
+			shift += BITS;
+		}
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			return leaf.hash == hash && leaf.key.equals(key) ? leaf : null;
+		}
+		if (node instanceof Collision) {
+			for (Leaf leaf : ((Collision) node).leaves) {
+				if (leaf.key.equals(key)) {
+					return leaf;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Object put(Object node, int shift, int hash, Object key, Object value, int[] added) {
+		if (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			int pos = Integer.bitCount(branch.bitmap & (bit - 1));
+			if ((branch.bitmap & bit) == 0) {
+				Object[] children = new Object[branch.children.length + 1];
+				System.arraycopy(branch.children, 0, children, 0, pos);
+				children[pos] = new Leaf(hash, key, value);
+				System.arraycopy(branch.children, pos, children, pos + 1, branch.children.length - pos);
+				added[0] = 1;
+				return new Branch(branch.bitmap | bit, children);
+			}
+			Object child = branch.children[pos];
+			Object newChild = put(child, shift + BITS, hash, key, value, added);
+			if (newChild == child) {
+				return branch;
+			}
+			Object[] children = branch.children.clone();
+			children[pos] = newChild;
+			return new Branch(branch.bitmap, children);
+		}
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			if (leaf.hash == hash && leaf.key.equals(key)) {
+				return leaf.value == value ? leaf : new Leaf(hash, key, value);
+			}
+			added[0] = 1;
+			if (leaf.hash == hash) {
+				return new Collision(hash, new Leaf[] { leaf, new Leaf(hash, key, value) });
+			}
+			return merge(shift, leaf, leaf.hash, new Leaf(hash, key, value), hash);
+		}
+		Collision collision = (Collision) node;
+		if (collision.hash != hash) {
+			added[0] = 1;
+			return merge(shift, collision, collision.hash, new Leaf(hash, key, value), hash);
+		}
+		Leaf[] leaves = collision.leaves;
+		for (int i = 0; i < leaves.length; i++) {
+			if (leaves[i].key.equals(key)) {
+				if (leaves[i].value == value) {
+					return collision;
+				}
+				Leaf[] copy = leaves.clone();
+				copy[i] = new Leaf(hash, key, value);
+				return new Collision(hash, copy);
+			}
+		}
+		Leaf[] copy = Arrays.copyOf(leaves, leaves.length + 1);
+		copy[leaves.length] = new Leaf(hash, key, value);
+		added[0] = 1;
+		return new Collision(hash, copy);
+	}
+
+	/**
+	 * @return branch holding two nodes with different hashes
+	 */
+	private static Object merge(int shift, Object a, int hashA, Object b, int hashB) {
+		int indexA = (hashA >>> shift) & MASK;
+		int indexB = (hashB >>> shift) & MASK;
+		if (indexA == indexB) {
+			return new Branch(1 << indexA, new Object[] { merge(shift + BITS, a, hashA, b, hashB) });
+		}
+		Object[] children = indexA < indexB ? new Object[] { a, b } : new Object[] { b, a };
+		return new Branch(1 << indexA | 1 << indexB, children);
+	}
+
+	/**
+	 * @return the node without the key, the same node if the key is not in it, null if it became empty
+	 */
+	private static Object remove(Object node, int shift, int hash, Object key) {
+		if (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((branch.bitmap & bit) == 0) {
+				return branch;
+			}
+			int pos = Integer.bitCount(branch.bitmap & (bit - 1));
+			Object child = branch.children[pos];
+			Object newChild = remove(child, shift + BITS, hash, key);
+			if (newChild == child) {
+				return branch;
+			}
+			if (newChild == null) {
+				if (branch.children.length == 1) {
+					return null;
+				}
+				Object[] children = new Object[branch.children.length - 1];
+				System.arraycopy(branch.children, 0, children, 0, pos);
+				System.arraycopy(branch.children, pos + 1, children, pos, children.length - pos);
+				if (children.length == 1 && !(children[0] instanceof Branch)) {
+					// a single entry moves up, its hash prefix still leads to it
+					return children[0];
+				}
+				return new Branch(branch.bitmap & ~bit, children);
+			}
+			if (branch.children.length == 1 && !(newChild instanceof Branch)) {
+				return newChild;
+			}
+			Object[] children = branch.children.clone();
+			children[pos] = newChild;
+			return new Branch(branch.bitmap, children);
+		}
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			return leaf.hash == hash && leaf.key.equals(key) ? null : leaf;
+		}
+		Collision collision = (Collision) node;
+		if (collision.hash != hash) {
+			return collision;
+		}
+		Leaf[] leaves = collision.leaves;
+		for (int i = 0; i < leaves.length; i++) {
+			if (leaves[i].key.equals(key)) {
+				if (leaves.length == 2) {
+					return leaves[1 - i];
+				}
+				Leaf[] copy = new Leaf[leaves.length - 1];
+				System.arraycopy(leaves, 0, copy, 0, i);
+				System.arraycopy(leaves, i + 1, copy, i, copy.length - i);
+				return new Collision(hash, copy);
+			}
+		}
+		return collision;
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T cast(Object value) {
+		return (T) value;
+	}
+
+	private K key(Leaf leaf) {
+		return cast(leaf.key);
+	}
+
+	private V value(Leaf leaf) {
+		return cast(leaf.value);
+	}
+
+	private static final class Leaf implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final int hash;
+		private final Object key;
+		private final Object value;
+
+		Leaf(int hash, Object key, Object value) {
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Inner node: the bitmap tells which of the 32 slots are present, the
+	 * children array holds only those.
+	 */
+	private static final class Branch implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final int bitmap;
+		private final Object[] children;
+
+		Branch(int bitmap, Object[] children) {
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+	}
+
+	/**
+	 * Entries with the same full hash.
+	 */
+	private static final class Collision implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final int hash;
+		private final Leaf[] leaves;
+
+		Collision(int hash, Leaf[] leaves) {
+			this.hash = hash;
+			this.leaves = leaves;
+		}
+	}
+
+	/**
+	 * Depth first iteration over the leaves of a subtree.
+	 */
+	private static final class LeafIterator implements Iterator<Leaf> {
+		private final Deque<Object> stack = new ArrayDeque<Object>();
+		private Leaf next;
+
+		LeafIterator(Object root) {
+			if (root != null) {
+				stack.push(root);
+			}
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			while (next == null && !stack.isEmpty()) {
+				Object node = stack.pop();
+				if (node instanceof Leaf) {
+					next = (Leaf) node;
+				} else if (node instanceof Branch) {
+					Object[] children = ((Branch) node).children;
+					for (int i = children.length - 1; i >= 0; i--) {
+						stack.push(children[i]);
+					}
+				} else {
+					Leaf[] leaves = ((Collision) node).leaves;
+					for (int i = leaves.length - 1; i >= 0; i--) {
+						stack.push(leaves[i]);
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Leaf next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Leaf leaf = next;
+			advance();
+			return leaf;
+		}
+	}
+}
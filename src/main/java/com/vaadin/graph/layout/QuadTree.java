@@ -0,0 +1,189 @@
+package com.vaadin.graph.layout;
+
+import java.util.Arrays;
+
+/**
+ * Barnes-Hut quadtree over node coordinates, stored in primitive arrays which
+ * are reused from one build to the next, so that rebuilding the tree in every
+ * iteration does not allocate once the arrays have grown to the needed size.
+ */
+final class QuadTree {
+
+	private static final int MAX_DEPTH = 24;
+
+	private double[] cx;
+	private double[] cy;
+	private double[] half;
+	private double[] mass;
+	private double[] mx;
+	private double[] my;
+	/** node stored in a leaf, -1 if none */
+	private int[] body;
+	/** first of the four consecutive children of a cell, -1 for a leaf */
+	private int[] children;
+	private int cells;
+
+	private double[] x;
+	private double[] y;
+	private double[] weight;
+
+	QuadTree(int expectedNodes) {
+		allocate(Math.max(16, 2 * expectedNodes));
+	}
+
+	/**
+	 * Rebuilds the tree over the given coordinates.
+	 */
+	void build(double[] x, double[] y, int n) {
+		build(x, y, null, n);
+	}
+
+	/**
+	 * Rebuilds the tree over the given coordinates of weighted nodes.
+	 *
+	 * @param weight mass of each node, null for unit masses
+	 */
+	void build(double[] x, double[] y, double[] weight, int n) {
+		this.x = x;
+		this.y = y;
+		this.weight = weight;
+		double minX = Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE;
+		double maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		cells = 0;
+		cell((minX + maxX) / 2, (minY + maxY) / 2, Math.max(Math.max(maxX - minX, maxY - minY) / 2, 1) + 1);
+		for (int i = 0; i < n; i++) {
+			insert(0, i, 0);
+		}
+	}
+
+	/**
+	 * Adds the repulsion acting on node i to fx[i] and fy[i].
+	 *
+	 * @param k2 square of the ideal arc length
+	 * @param theta opening criterion
+	 */
+	void repulse(int i, double[] fx, double[] fy, double k2, double theta) {
+		repulse(0, i, fx, fy, k2, theta * theta);
+	}
+
+	private void repulse(int c, int i, double[] fx, double[] fy, double k2, double theta2) {
+		double m = body[c] == i ? mass[c] - weight(i) : mass[c];
+		if (m <= 0) {
+			return;
+		}
+		double dx = x[i] - mx[c] / mass[c];
+		double dy = y[i] - my[c] / mass[c];
+		double d2 = dx * dx + dy * dy;
+		double size = 2 * half[c];
+		if (children[c] < 0 || size * size < theta2 * d2) {
+			if (d2 < 0.01) {
+				// deterministic push apart of nodes at the same position
+				dx = (i & 1) == 0 ? -0.1 : 0.1;
+				dy = (i & 2) == 0 ? -0.1 : 0.1;
+				d2 = dx * dx + dy * dy;
+			}
+			fx[i] += dx * k2 * m / d2;
+			fy[i] += dy * k2 * m / d2;
+		} else {
+			int first = children[c];
+			for (int q = first; q < first + 4; q++) {
+				repulse(q, i, fx, fy, k2, theta2);
+			}
+		}
+	}
+
+	private void insert(int c, int i, int depth) {
+		while (true) {
+			if (children[c] < 0) {
+				if (mass[c] == 0 || depth >= MAX_DEPTH) {
+					// empty leaf, or too deep to split (nodes at the same position)
+					if (mass[c] == 0) {
+						body[c] = i;
+					}
+					add(c, i);
+					return;
+				}
+				split(c);
+				int existing = body[c];
+				body[c] = -1;
+				insert(quadrant(c, existing), existing, depth + 1);
+			}
+			add(c, i);
+			c = quadrant(c, i);
+			depth++;
+		}
+	}
+
+	private void split(int c) {
+		double h = half[c] / 2;
+		double px = cx[c];
+		double py = cy[c];
+		int first = cell(px - h, py - h, h);
+		cell(px + h, py - h, h);
+		cell(px - h, py + h, h);
+		cell(px + h, py + h, h);
+		children[c] = first;
+	}
+
+	private int quadrant(int c, int i) {
+		return children[c] + (x[i] < cx[c] ? 0 : 1) + (y[i] < cy[c] ? 0 : 2);
+	}
+
+	private void add(int c, int i) {
+		double w = weight(i);
+		mass[c] += w;
+		mx[c] += x[i] * w;
+		my[c] += y[i] * w;
+	}
+
+	private double weight(int i) {
+		return weight == null ? 1 : weight[i];
+	}
+
+	private int cell(double px, double py, double h) {
+		if (cells == cx.length) {
+			grow();
+		}
+		int c = cells++;
+		cx[c] = px;
+		cy[c] = py;
+		half[c] = h;
+		mass[c] = 0;
+		mx[c] = 0;
+		my[c] = 0;
+		body[c] = -1;
+		children[c] = -1;
+		return c;
+	}
+
+	private void allocate(int capacity) {
+		cx = new double[capacity];
+		cy = new double[capacity];
+		half = new double[capacity];
+		mass = new double[capacity];
+		mx = new double[capacity];
+		my = new double[capacity];
+		body = new int[capacity];
+		children = new int[capacity];
+	}
+
+	private void grow() {
+		int capacity = cx.length * 2;
+		cx = Arrays.copyOf(cx, capacity);
+		cy = Arrays.copyOf(cy, capacity);
+		half = Arrays.copyOf(half, capacity);
+		mass = Arrays.copyOf(mass, capacity);
+		mx = Arrays.copyOf(mx, capacity);
+		my = Arrays.copyOf(my, capacity);
+		body = Arrays.copyOf(body, capacity);
+		children = Arrays.copyOf(children, capacity);
+	}
+}
@@ -0,0 +1,318 @@
+package com.vaadin.graph.layout;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.RootedLayoutEngine;
+import com.vaadin.graph.shared.NodeProxy;
+import com.vaadin.graph.shared.NodeProxy.NodeState;
+
+/**
+ * Radial tree layout engine: nodes are placed on concentric rings around the
+ * root according to their BFS depth, every node gets an angular sector
+ * proportional to the size of its BFS subtree and its children share that
+ * sector. The layout takes O(n + m) and does not iterate.
+ * <p>
+ * Sectors are kept between layouts. When nodes are added below a node (e.g.
+ * after an expand) only the sector of that node is divided again, the rest of
+ * the graph keeps its angles. If the sector has become too narrow for its
+ * children the reallocation moves up to the parent, at worst to the root.
+ * The ring distance follows the depth of the tree unless set explicitly.
+ * <p>
+ * Nodes of other connected components are attached to the root. Locked nodes
+ * and the placed root keep their position.
+ */
+public class RadialLayoutEngine implements RootedLayoutEngine {
+	private static final long serialVersionUID = 1L;
+
+	private static final double FULL_CIRCLE = 2 * Math.PI;
+
+	private final LayoutEngineModel model;
+	private final Map<String, Sector> sectors = new HashMap<String, Sector>();
+
+	private String rootId;
+	private String lastRootId;
+	private double ringDistance = 0;
+	private double nodeSpacing = 50;
+
+	public RadialLayoutEngine() {
+		this(new JungLayoutEngineModel());
+	}
+
+	public RadialLayoutEngine(LayoutEngineModel model) {
+		this(model, null);
+	}
+
+	/**
+	 * @param model model to lay out
+	 * @param rootId ID of the node in the center, null to choose the expanded
+	 *        node with the highest degree
+	 */
+	public RadialLayoutEngine(LayoutEngineModel model, String rootId) {
+		super();
+		this.model = model;
+		this.rootId = rootId;
+	}
+
+	@Override
+	public LayoutEngineModel getModel() {
+		return model;
+	}
+
+	@Override
+	public String getRootId() {
+		return rootId;
+	}
+
+	@Override
+	public void setRootId(String rootId) {
+		this.rootId = rootId;
+	}
+
+	public double getRingDistance() {
+		return ringDistance;
+	}
+
+	/**
+	 * @param ringDistance distance between two rings in pixels, 0 to fit the
+	 *        deepest ring into the canvas
+	 */
+	public void setRingDistance(double ringDistance) {
+		this.ringDistance = ringDistance;
+	}
+
+	public double getNodeSpacing() {
+		return nodeSpacing;
+	}
+
+	/**
+	 * @param nodeSpacing minimal distance of siblings on a ring in pixels,
+	 *        sectors are reallocated further up when it cannot be kept
+	 */
+	public void setNodeSpacing(double nodeSpacing) {
+		this.nodeSpacing = nodeSpacing;
+	}
+
+	/**
+	 * Drop the sectors, the next layout allocates all of them again.
+	 */
+	public void reset() {
+		sectors.clear();
+	}
+
+	@Override
+	public void layout(int width, int height, Collection<NodeProxy> lockedNodes) {
+		LayoutGraph graph = LayoutGraph.of(model, lockedNodes);
+		int n = graph.size();
+		if (n == 0) {
+			sectors.clear();
+			return;
+		}
+		int root = root(graph);
+		String actualRootId = graph.getNode(root).getId();
+		if (!actualRootId.equals(lastRootId)) {
+			sectors.clear();
+			lastRootId = actualRootId;
+		}
+
+		// BFS tree, other components hang below the root
+		int[] order = new int[n];
+		int[] parent = new int[n];
+		int[] depth = new int[n];
+		Arrays.fill(depth, -1);
+		parent[root] = -1;
+		depth[root] = 0;
+		order[0] = root;
+		int visited = bfs(graph, order, 0, 1, parent, depth);
+		for (int i = 0; i < n; i++) {
+			if (depth[i] < 0) {
+				parent[i] = root;
+				depth[i] = 1;
+				order[visited] = i;
+				visited = bfs(graph, order, visited, visited + 1, parent, depth);
+			}
+		}
+
+		// children in BFS order, subtree sizes bottom up
+		int[] childOffsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			if (parent[i] >= 0) {
+				childOffsets[parent[i] + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			childOffsets[i + 1] += childOffsets[i];
+		}
+		int[] children = new int[n];
+		int[] fill = new int[n];
+		for (int o = 0; o < n; o++) {
+			int i = order[o];
+			if (parent[i] >= 0) {
+				children[childOffsets[parent[i]] + fill[parent[i]]++] = i;
+			}
+		}
+		int[] size = new int[n];
+		int maxDepth = 0;
+		for (int o = n - 1; o >= 0; o--) {
+			int i = order[o];
+			size[i]++;
+			if (parent[i] >= 0) {
+				size[parent[i]] += size[i];
+			}
+			maxDepth = Math.max(maxDepth, depth[i]);
+		}
+
+		double[] x = graph.getX();
+		double[] y = graph.getY();
+		boolean[] locked = graph.getLocked();
+		double centerX = x[root] >= 0 ? x[root] : width / 2.0;
+		double centerY = y[root] >= 0 ? y[root] : height / 2.0;
+		double ring = ringDistance > 0 ? ringDistance
+				: Math.max(1, (Math.min(width, height) / 2.0 - nodeSpacing / 2) / Math.max(maxDepth, 1));
+
+		// nodes whose children need new sectors: new or changed children, or too crowded
+		boolean[] reallocate = new boolean[n];
+		reallocate[root] = sectors.isEmpty();
+		for (int i = 0; i < n; i++) {
+			Sector sector = sectors.get(graph.getNode(i).getId());
+			int childCount = childOffsets[i + 1] - childOffsets[i];
+			if (sector != null && sector.children != childCount) {
+				reallocate[i] = true;
+			}
+			if (parent[i] >= 0 && (sector == null || !graph.getNode(parent[i]).getId().equals(sector.parentId))) {
+				reallocate[parent[i]] = true;
+			}
+		}
+		for (int o = n - 1; o > 0; o--) {
+			int i = order[o];
+			Sector sector = sectors.get(graph.getNode(i).getId());
+			if (reallocate[i] && sector != null) {
+				int childCount = childOffsets[i + 1] - childOffsets[i];
+				double arc = (sector.end - sector.start) * ring * (depth[i] + 1);
+				if (arc < childCount * nodeSpacing) {
+					reallocate[parent[i]] = true;
+				}
+			}
+		}
+
+		// sectors top down, a changed sector is passed on to the children
+		double[] start = new double[n];
+		double[] end = new double[n];
+		boolean[] changed = new boolean[n];
+		start[root] = 0;
+		end[root] = FULL_CIRCLE;
+		for (int o = 0; o < n; o++) {
+			int i = order[o];
+			if (i != root && !changed[i]) {
+				Sector sector = sectors.get(graph.getNode(i).getId());
+				start[i] = sector.start;
+				end[i] = sector.end;
+			}
+			if (reallocate[i] || changed[i]) {
+				int from = childOffsets[i];
+				int to = childOffsets[i + 1];
+				double total = size[i] - 1;
+				double angle = start[i];
+				for (int c = from; c < to; c++) {
+					int child = children[c];
+					start[child] = angle;
+					angle += (end[i] - start[i]) * size[child] / total;
+					end[child] = angle;
+					changed[child] = true;
+				}
+			}
+		}
+
+		sectors.clear();
+		for (int i = 0; i < n; i++) {
+			String parentId = parent[i] >= 0 ? graph.getNode(parent[i]).getId() : null;
+			sectors.put(graph.getNode(i).getId(),
+					new Sector(start[i], end[i], parentId, childOffsets[i + 1] - childOffsets[i]));
+			if (locked[i]) {
+				continue;
+			}
+			if (i == root) {
+				x[i] = centerX;
+				y[i] = centerY;
+			} else {
+				double angle = (start[i] + end[i]) / 2;
+				double radius = depth[i] * ring;
+				x[i] = clamp(centerX + radius * Math.cos(angle), width);
+				y[i] = clamp(centerY + radius * Math.sin(angle), height);
+			}
+		}
+		graph.writeBack();
+	}
+
+	/**
+	 * @return index of the root node: the configured one, or the expanded
+	 *         node with the highest degree, or the node with the highest degree
+	 */
+	private int root(LayoutGraph graph) {
+		int root = rootId == null ? -1 : graph.indexOf(rootId);
+		if (root >= 0) {
+			return root;
+		}
+		for (int i = 0; i < graph.size(); i++) {
+			boolean expanded = NodeState.EXPANDED.equals(graph.getNode(i).getState());
+			if (root < 0) {
+				root = i;
+			} else {
+				boolean rootExpanded = NodeState.EXPANDED.equals(graph.getNode(root).getState());
+				if (expanded && !rootExpanded || expanded == rootExpanded && graph.degree(i) > graph.degree(root)) {
+					root = i;
+				}
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Continues a BFS whose queue is the part of order between head and tail.
+	 *
+	 * @return new tail of the queue
+	 */
+	private static int bfs(LayoutGraph graph, int[] order, int head, int tail, int[] parent, int[] depth) {
+		int[] offsets = graph.getOffsets();
+		int[] adjacent = graph.getAdjacent();
+		while (head < tail) {
+			int i = order[head++];
+			for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+				int j = adjacent[a];
+				if (depth[j] < 0) {
+					depth[j] = depth[i] + 1;
+					parent[j] = i;
+					order[tail++] = j;
+				}
+			}
+		}
+		return tail;
+	}
+
+	private static double clamp(double value, int max) {
+		return Math.min(Math.max(0, value), max);
+	}
+
+	/**
+	 * Angular sector of a node, kept between layouts.
+	 */
+	private static final class Sector implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final double start;
+		private final double end;
+		private final String parentId;
+		private final int children;
+
+		Sector(double start, double end, String parentId, int children) {
+			this.start = start;
+			this.end = end;
+			this.parentId = parentId;
+			this.children = children;
+		}
+	}
+}
@@ -0,0 +1,491 @@
+package com.vaadin.graph.layout;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.vaadin.graph.BudgetedLayoutEngine;
+import com.vaadin.graph.LayoutBudget;
+import com.vaadin.graph.LayoutEngine;
+import com.vaadin.graph.LayoutEngineModel;
+import com.vaadin.graph.LayoutStats;
+import com.vaadin.graph.shared.NodeProxy;
+
+/**
+ * Distance based layout engine: nodes are placed so that their distance on
+ * the canvas is proportional to their graph theoretic (BFS) distance.
+ * <p>
+ * The initial layout is computed by pivot MDS: BFS distances from a small set
+ * of pivots chosen by max-min selection are projected onto their two principal
+ * components, which takes O(k (n + m)) for k pivots. The layout is then
+ * improved by sparse stress majorization, each node being attracted to the
+ * ideal distance from its neighbors and from the pivots, the latter weighted
+ * by the number of nodes they stand for.
+ * <p>
+ * The calculation does not use random numbers, so laying out the same graph
+ * again gives the same result. Locked nodes keep their position, the initial
+ * layout is aligned with them.
+ */
+public class StressLayoutEngine implements BudgetedLayoutEngine {
+	private static final long serialVersionUID = 1L;
+
+	private static final int POWER_ITERATIONS = 100;
+
+	private final LayoutEngineModel model;
+
+	private int pivots = 50;
+	private int iterations = 50;
+	private double arcLength = 0;
+	private LayoutBudget budget = LayoutBudget.UNLIMITED;
+	private LayoutStats lastStats;
+
+	public StressLayoutEngine() {
+		this(new JungLayoutEngineModel());
+	}
+
+	public StressLayoutEngine(LayoutEngineModel model) {
+		super();
+		this.model = model;
+	}
+
+	@Override
+	public LayoutEngineModel getModel() {
+		return model;
+	}
+
+	public int getPivots() {
+		return pivots;
+	}
+
+	/**
+	 * @param pivots number of pivots, more pivots give a more accurate layout
+	 *        at a higher cost
+	 */
+	public void setPivots(int pivots) {
+		this.pivots = pivots;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @param iterations number of stress majorization iterations, 0 keeps the pivot MDS layout
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	public double getArcLength() {
+		return arcLength;
+	}
+
+	/**
+	 * @param arcLength ideal length of an arc in pixels, 0 to derive it from the
+	 *        canvas size and the diameter of the graph
+	 */
+	public void setArcLength(double arcLength) {
+		this.arcLength = arcLength;
+	}
+
+	@Override
+	public LayoutBudget getBudget() {
+		return budget;
+	}
+
+	@Override
+	public void setBudget(LayoutBudget budget) {
+		this.budget = budget == null ? LayoutBudget.UNLIMITED : budget;
+	}
+
+	@Override
+	public LayoutStats getLastStats() {
+		return lastStats;
+	}
+
+	@Override
+	public LayoutEngine snapshot() {
+		StressLayoutEngine copy = new StressLayoutEngine(JungLayoutEngineModel.copyOf(model));
+		copy.setPivots(pivots);
+		copy.setIterations(iterations);
+		copy.setArcLength(arcLength);
+		copy.setBudget(budget);
+		return copy;
+	}
+
+	@Override
+	public void layout(int width, int height, Collection<NodeProxy> lockedNodes) {
+		LayoutRun run = new LayoutRun(budget);
+		LayoutGraph graph = LayoutGraph.of(model, lockedNodes);
+		int n = graph.size();
+		if (n == 0) {
+			lastStats = run.finish();
+			return;
+		}
+		double[] x = graph.getX();
+		double[] y = graph.getY();
+		boolean[] locked = graph.getLocked();
+		if (n == 1) {
+			if (!locked[0]) {
+				x[0] = width / 2.0;
+				y[0] = height / 2.0;
+			}
+			lastStats = run.finish();
+			graph.writeBack();
+			return;
+		}
+
+		int[] pivot = new int[Math.max(1, Math.min(pivots, n))];
+		int[][] distance = pivotDistances(graph, pivot);
+		int diameter = 0;
+		for (int[] d : distance) {
+			for (int i = 0; i < n; i++) {
+				diameter = Math.max(diameter, d[i]);
+			}
+		}
+		// unreachable nodes are treated as being just beyond the diameter
+		for (int[] d : distance) {
+			for (int i = 0; i < n; i++) {
+				if (d[i] < 0) {
+					d[i] = diameter + 1;
+				}
+			}
+		}
+		double unit = arcLength > 0 ? arcLength : Math.min(width, height) / (diameter + 2.0);
+
+		double[] mdsX = new double[n];
+		double[] mdsY = new double[n];
+		pivotMds(graph, distance, mdsX, mdsY);
+		place(mdsX, mdsY, x, y, locked, unit, width, height);
+		majorize(graph, pivot, distance, unit, width, height, run);
+
+		lastStats = run.finish();
+		graph.writeBack();
+	}
+
+	/**
+	 * Selects pivots by max-min selection, starting with the node of the
+	 * highest degree, and computes their BFS distances to all nodes (-1 for
+	 * unreachable nodes).
+	 */
+	private static int[][] pivotDistances(LayoutGraph graph, int[] pivot) {
+		int n = graph.size();
+		int[][] distance = new int[pivot.length][];
+		int[] nearest = new int[n];
+		Arrays.fill(nearest, Integer.MAX_VALUE);
+		int[] queue = new int[n];
+		int next = 0;
+		for (int i = 1; i < n; i++) {
+			if (graph.degree(i) > graph.degree(next)) {
+				next = i;
+			}
+		}
+		for (int p = 0; p < pivot.length; p++) {
+			pivot[p] = next;
+			distance[p] = bfs(graph, next, queue);
+			int farthest = -1;
+			for (int i = 0; i < n; i++) {
+				int d = distance[p][i] < 0 ? Integer.MAX_VALUE - 1 : distance[p][i];
+				nearest[i] = Math.min(nearest[i], d);
+				if (farthest < 0 || nearest[i] > nearest[farthest]) {
+					farthest = i;
+				}
+			}
+			next = farthest;
+		}
+		return distance;
+	}
+
+	private static int[] bfs(LayoutGraph graph, int source, int[] queue) {
+		int[] offsets = graph.getOffsets();
+		int[] adjacent = graph.getAdjacent();
+		int[] distance = new int[graph.size()];
+		Arrays.fill(distance, -1);
+		distance[source] = 0;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+		while (head < tail) {
+			int i = queue[head++];
+			for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+				int j = adjacent[a];
+				if (distance[j] < 0) {
+					distance[j] = distance[i] + 1;
+					queue[tail++] = j;
+				}
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * Pivot MDS: projects the double centered squared pivot distances onto
+	 * their two principal components. The result is scaled to an average arc
+	 * length of 1.
+	 */
+	private static void pivotMds(LayoutGraph graph, int[][] distance, double[] x, double[] y) {
+		int n = graph.size();
+		int k = distance.length;
+		double[][] c = new double[k][n];
+		double[] rowMean = new double[n];
+		double[] columnMean = new double[k];
+		double grandMean = 0;
+		for (int p = 0; p < k; p++) {
+			for (int i = 0; i < n; i++) {
+				double d2 = (double) distance[p][i] * distance[p][i];
+				c[p][i] = d2;
+				rowMean[i] += d2 / k;
+				columnMean[p] += d2 / n;
+				grandMean += d2 / ((double) n * k);
+			}
+		}
+		for (int p = 0; p < k; p++) {
+			for (int i = 0; i < n; i++) {
+				c[p][i] = -0.5 * (c[p][i] - rowMean[i] - columnMean[p] + grandMean);
+			}
+		}
+		// k x k matrix C^T C
+		double[][] ctc = new double[k][k];
+		for (int p = 0; p < k; p++) {
+			for (int q = p; q < k; q++) {
+				double sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += c[p][i] * c[q][i];
+				}
+				ctc[p][q] = sum;
+				ctc[q][p] = sum;
+			}
+		}
+		double[] first = eigenvector(ctc, null);
+		double[] second = eigenvector(ctc, first);
+		for (int i = 0; i < n; i++) {
+			double sx = 0;
+			double sy = 0;
+			for (int p = 0; p < k; p++) {
+				sx += c[p][i] * first[p];
+				sy += c[p][i] * second[p];
+			}
+			x[i] = sx;
+			y[i] = sy;
+		}
+
+		int[] offsets = graph.getOffsets();
+		int[] adjacent = graph.getAdjacent();
+		double length = 0;
+		int arcs = 0;
+		for (int i = 0; i < n; i++) {
+			for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+				int j = adjacent[a];
+				length += Math.sqrt((x[i] - x[j]) * (x[i] - x[j]) + (y[i] - y[j]) * (y[i] - y[j]));
+				arcs++;
+			}
+		}
+		double scale = arcs == 0 || length == 0 ? 1 : arcs / length;
+		for (int i = 0; i < n; i++) {
+			x[i] *= scale;
+			y[i] *= scale;
+		}
+	}
+
+	/**
+	 * Dominant eigenvector of a symmetric matrix by power iteration, orthogonal
+	 * to the given vector if any.
+	 */
+	private static double[] eigenvector(double[][] matrix, double[] orthogonalTo) {
+		int k = matrix.length;
+		double[] v = new double[k];
+		for (int p = 0; p < k; p++) {
+			// fixed, asymmetric start vector keeps the result reproducible
+			v[p] = 1.0 + p % 7;
+		}
+		double[] w = new double[k];
+		for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+			if (orthogonalTo != null) {
+				double dot = 0;
+				for (int p = 0; p < k; p++) {
+					dot += v[p] * orthogonalTo[p];
+				}
+				for (int p = 0; p < k; p++) {
+					v[p] -= dot * orthogonalTo[p];
+				}
+			}
+			double norm = 0;
+			for (int p = 0; p < k; p++) {
+				double sum = 0;
+				for (int q = 0; q < k; q++) {
+					sum += matrix[p][q] * v[q];
+				}
+				w[p] = sum;
+				norm += sum * sum;
+			}
+			norm = Math.sqrt(norm);
+			if (norm == 0) {
+				break;
+			}
+			for (int p = 0; p < k; p++) {
+				v[p] = w[p] / norm;
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * Moves the unlocked nodes to the MDS positions, scaled to pixels and
+	 * aligned with the locked nodes (or centered if there are none).
+	 */
+	private static void place(double[] mdsX, double[] mdsY, double[] x, double[] y, boolean[] locked, double unit,
+			int width, int height) {
+		int n = x.length;
+		double fromX = 0;
+		double fromY = 0;
+		double toX = 0;
+		double toY = 0;
+		int anchors = 0;
+		for (int i = 0; i < n; i++) {
+			if (locked[i]) {
+				fromX += mdsX[i] * unit;
+				fromY += mdsY[i] * unit;
+				toX += x[i];
+				toY += y[i];
+				anchors++;
+			}
+		}
+		if (anchors == 0) {
+			for (int i = 0; i < n; i++) {
+				fromX += mdsX[i] * unit;
+				fromY += mdsY[i] * unit;
+			}
+			anchors = n;
+			toX = n * width / 2.0;
+			toY = n * height / 2.0;
+		}
+		double dx = (toX - fromX) / anchors;
+		double dy = (toY - fromY) / anchors;
+		for (int i = 0; i < n; i++) {
+			if (!locked[i]) {
+				x[i] = clamp(mdsX[i] * unit + dx, width);
+				y[i] = clamp(mdsY[i] * unit + dy, height);
+			}
+		}
+	}
+
+	/**
+	 * Sparse stress majorization: each node is moved to the weighted average
+	 * of the positions its neighbors and the pivots suggest for it. A pivot
+	 * term is weighted by the number of nodes of the pivot's region which are
+	 * closer to the pivot than half the distance to the node.
+	 */
+	private void majorize(LayoutGraph graph, int[] pivot, int[][] distance, double unit, int width, int height,
+			LayoutRun run) {
+		int n = graph.size();
+		int k = pivot.length;
+		double[] x = graph.getX();
+		double[] y = graph.getY();
+		boolean[] locked = graph.getLocked();
+		int[] offsets = graph.getOffsets();
+		int[] adjacent = graph.getAdjacent();
+		separateCoincident(x, y, locked);
+
+		// regions: every node belongs to its nearest pivot
+		int maxDistance = 0;
+		int[] region = new int[n];
+		for (int i = 0; i < n; i++) {
+			for (int p = 0; p < k; p++) {
+				if (distance[p][i] < distance[region[i]][i]) {
+					region[i] = p;
+				}
+			}
+			maxDistance = Math.max(maxDistance, distance[region[i]][i]);
+		}
+		// closer[p][d]: members of the region of p at distance <= d from p
+		int[][] closer = new int[k][maxDistance + 1];
+		for (int i = 0; i < n; i++) {
+			closer[region[i]][distance[region[i]][i]]++;
+		}
+		for (int p = 0; p < k; p++) {
+			for (int d = 1; d <= maxDistance; d++) {
+				closer[p][d] += closer[p][d - 1];
+			}
+		}
+
+		for (int iteration = 0; iteration < iterations && run.mayContinue(); iteration++) {
+			double squared = 0;
+			double total = 0;
+			for (int i = 0; i < n; i++) {
+				if (locked[i]) {
+					continue;
+				}
+				double sx = 0;
+				double sy = 0;
+				double sw = 0;
+				for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+					int j = adjacent[a];
+					double f = unit / distance(x, y, i, j);
+					sx += x[j] + (x[i] - x[j]) * f;
+					sy += y[j] + (y[i] - y[j]) * f;
+					sw += 1;
+				}
+				for (int p = 0; p < k; p++) {
+					int j = pivot[p];
+					int d = distance[p][i];
+					if (j == i || d == 0) {
+						continue;
+					}
+					double w = (double) closer[p][Math.min(d / 2, maxDistance)] / ((double) d * d);
+					if (w == 0) {
+						continue;
+					}
+					double f = d * unit / distance(x, y, i, j);
+					sx += w * (x[j] + (x[i] - x[j]) * f);
+					sy += w * (y[j] + (y[i] - y[j]) * f);
+					sw += w;
+				}
+				if (sw == 0) {
+					continue;
+				}
+				double nx = clamp(sx / sw, width);
+				double ny = clamp(sy / sw, height);
+				double moved = (nx - x[i]) * (nx - x[i]) + (ny - y[i]) * (ny - y[i]);
+				squared += moved;
+				total += Math.sqrt(moved);
+				x[i] = nx;
+				y[i] = ny;
+			}
+			run.iterationDone(squared, total, n);
+		}
+	}
+
+	/**
+	 * Nodes at the same position get no direction from the majorization, MDS
+	 * places e.g. the leaves of a star at the same spot. Moves each such node
+	 * slightly, in a direction depending on its index only.
+	 */
+	private static void separateCoincident(double[] x, double[] y, boolean[] locked) {
+		Map<Long, Integer> seen = new HashMap<Long, Integer>();
+		for (int i = 0; i < x.length; i++) {
+			Long key = Math.round(x[i]) * 1000003L + Math.round(y[i]);
+			Integer count = seen.get(key);
+			int c = count == null ? 0 : count;
+			seen.put(key, c + 1);
+			if (c > 0 && !locked[i]) {
+				double angle = c * 2.399963;
+				x[i] += Math.sqrt(c) * Math.cos(angle);
+				y[i] += Math.sqrt(c) * Math.sin(angle);
+			}
+		}
+	}
+
+	/**
+	 * Distance of two nodes, at least 0.01 so that it can be divided by.
+	 */
+	private static double distance(double[] x, double[] y, int i, int j) {
+		double dx = x[i] - x[j];
+		double dy = y[i] - y[j];
+		return Math.max(Math.sqrt(dx * dx + dy * dy), 0.01);
+	}
+
+	private static double clamp(double value, int max) {
+		return Math.min(Math.max(0, value), max);
+	}
+}
@@ -5,12 +5,30 @@ import java.util.List;
 
 import com.vaadin.shared.AbstractComponentState;
 
+/**
+ * Shared state of the graph explorer. Instead of the whole graph, the state
+ * carries the changes made to the server-side model since the previous round
+ * trip; the client applies them once per {@link #version}.
+ */
 public class GraphExplorerState extends AbstractComponentState {
 
 	private static final long serialVersionUID = 1L;
 
-    public List<NodeProxy> nodes = new ArrayList<NodeProxy>();
-    public List<ArcProxy> arcs = new ArrayList<ArcProxy>();
-    public String removedId;
+	/** Model version the changes below lead to */
+	public int version;
+
+	/** Nodes not yet known to the client */
+	public List<NodeProxy> addedNodes = new ArrayList<NodeProxy>();
+	/** Known nodes whose content, style, kind or state has changed */
+	public List<NodeProxy> updatedNodes = new ArrayList<NodeProxy>();
+	/** Known nodes which have only been moved */
+	public List<NodePosition> movedNodes = new ArrayList<NodePosition>();
+	/** IDs of nodes no longer in the model */
+	public List<String> removedNodes = new ArrayList<String>();
+
+	/** Arcs not yet known to the client */
+	public List<ArcProxy> addedArcs = new ArrayList<ArcProxy>();
+	/** IDs of arcs no longer in the model */
+	public List<String> removedArcs = new ArrayList<String>();
 
 }
@@ -0,0 +1,49 @@
+package com.vaadin.graph.shared;
+
+import java.io.Serializable;
+
+/**
+ * Position of a node already known to the client. Sent instead of a whole
+ * {@link NodeProxy} when only the layout of the node has changed.
+ */
+public class NodePosition implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private String id;
+	private int x;
+	private int y;
+
+	public NodePosition() {
+		super();
+	}
+
+	public NodePosition(String id, int x, int y) {
+		this.id = id;
+		this.x = x;
+		this.y = y;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public void setX(int x) {
+		this.x = x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public void setY(int y) {
+		this.y = y;
+	}
+}
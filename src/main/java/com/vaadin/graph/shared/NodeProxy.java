@@ -31,6 +31,7 @@ public class NodeProxy extends IndexedElement {
     private NodeKind kind = NodeKind.NORMAL;
     private NodeState state = NodeState.COLLAPSED;
     private String style = null;
+    private boolean pending = false;
 
     public NodeProxy() {
     	super();
@@ -68,6 +69,13 @@ public class NodeProxy extends IndexedElement {
 		return style;
 	}
 
+    /**
+     * @return true while neighbors of this expanded node are still being fetched
+     */
+    public boolean isPending() {
+        return pending;
+    }
+
     public void setKind(NodeKind kind) {
         this.kind = kind;
     }
@@ -96,6 +104,10 @@ public class NodeProxy extends IndexedElement {
 		this.style = style;
 	}
 
+    public void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
 	@Override
     public String toString() {
     	StringBuilder sb = new StringBuilder();